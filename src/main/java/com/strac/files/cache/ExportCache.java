@@ -0,0 +1,58 @@
+package com.strac.files.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * In-memory cache of Google Workspace files converted by Drive's export, so exporting an unchanged
+ * document again does not wait for Drive to convert it again. Entries are keyed by the version of the
+ * file, so an edit makes the old conversions unreachable and they age out. Entries are weighed by size
+ * in KB (Drive exports at most 10 MB) and hit/miss counts are published as cache.* metrics tagged with
+ * cache=file-export.
+ */
+@Component
+public class ExportCache {
+
+    private final Cache<ExportKey, byte[]> cache;
+
+    public record ExportKey(String driveFileId, long version, String mimeType) {
+    }
+
+    @FunctionalInterface
+    public interface Exporter {
+        byte[] export() throws IOException;
+    }
+
+    public ExportCache(@Value("${files.export.cache.max.mb}") long maxMb, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxMb * 1024)
+                .weigher((ExportKey key, byte[] content) -> Math.max(1, content.length / 1024))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "file-export");
+    }
+
+    // Concurrent exports of the same version and format wait for a single conversion
+    public byte[] get(ExportKey key, Exporter exporter) throws IOException {
+        try {
+            return cache.get(key, k -> {
+                try {
+                    return exporter.export();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.strac.files.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * Optional cache of downloaded file content on local disk, keyed by Drive file id and version, so a
+ * popular file is fetched from Drive once per version instead of once per download. A file is cached
+ * while it streams to the first client that downloads it whole. The cache is bounded by total size, files
+ * being cached included: a fill reserves the size of its file when it starts, and cached files are evicted
+ * to make room for it. Caffeine picks what to evict by how often and how recently files were downloaded
+ * (W-TinyLFU), so a new file that looks less popular than the cached ones can be evicted as soon as it is
+ * committed. Hits are sent by Tomcat's sendfile when the connector
+ * supports it, which does not copy the content through the heap. Otherwise they are sent with
+ * FileChannel.transferTo, which the JDK turns into a copy through a heap buffer for a servlet stream.
+ * Hit/miss counts and evictions are published as cache.* metrics tagged with cache=file-content, along
+ * with files.content.cache.size and files.content.cache.served in bytes.
+ */
+@Slf4j
+@Component
+public class FileContentCache {
+
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final boolean enabled;
+
+    private final Path directory;
+
+    private final long maxFileBytes;
+
+    private final long deleteGraceSec;
+
+    private final long maxWeight;
+
+    private final Cache<String, Entry> entries;
+
+    private final Policy.Eviction<String, Entry> eviction;
+
+    // Weight held back from the cache for fills in progress, guarded by this
+    private long reservedWeight;
+
+    private final Set<String> fillsInProgress = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong storedBytes = new AtomicLong();
+
+    private final Counter servedBytes;
+
+    private record Entry(Path file, long size) {
+    }
+
+    public FileContentCache(@Value("${files.content.cache.enabled}") boolean enabled,
+                            @Value("${files.content.cache.dir}") String directory,
+                            @Value("${files.content.cache.max.mb}") long maxMb,
+                            @Value("${files.content.cache.max.file.mb}") long maxFileMb,
+                            @Value("${files.content.cache.delete.grace.sec}") long deleteGraceSec,
+                            MeterRegistry meterRegistry) throws IOException {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory).toAbsolutePath();
+        this.maxFileBytes = maxFileMb * 1024 * 1024;
+        this.deleteGraceSec = deleteGraceSec;
+        this.maxWeight = maxMb * 1024;
+        this.entries = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((String key, Entry entry) -> weight(entry.size()))
+                .removalListener((String key, Entry entry, RemovalCause cause) -> {
+                    if (entry != null) {
+                        storedBytes.addAndGet(-entry.size());
+                        delete(entry.file());
+                    }
+                })
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+        this.eviction = entries.policy().eviction().orElseThrow();
+
+        if (enabled) {
+            // Files left over from a previous run are not in the index, so they would only take up space
+            Files.createDirectories(this.directory);
+            try (Stream<Path> leftovers = Files.list(this.directory)) {
+                leftovers.forEach(FileContentCache::deleteQuietly);
+            }
+        }
+
+        CaffeineCacheMetrics.monitor(meterRegistry, entries, "file-content");
+        Gauge.builder("files.content.cache.size", storedBytes, AtomicLong::get)
+                .baseUnit("bytes").description("Bytes of file content cached on disk").register(meterRegistry);
+        this.servedBytes = Counter.builder("files.content.cache.served")
+                .baseUnit("bytes").description("Bytes of downloads sent from the disk cache").register(meterRegistry);
+    }
+
+    // Open the cached content of a version of a file, or return null if it is not cached. Close it once sent.
+    public CachedContent find(String driveFileId, Long version) throws IOException {
+        if (!enabled || version == null) {
+            return null;
+        }
+        String key = key(driveFileId, version);
+        Entry entry = entries.getIfPresent(key);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return new CachedContent(entry, FileChannel.open(entry.file(), StandardOpenOption.READ));
+        } catch (NoSuchFileException e) {
+            entries.invalidate(key);
+            return null;
+        }
+    }
+
+    // Start caching a version of a file as it is downloaded, or return null if it will not be cached:
+    // the cache is off, the file is too big, another download is already caching it, or fills in
+    // progress already take up the whole cache. Commit the fill once the whole file went through it,
+    // and close it in every case.
+    public Fill startFill(String driveFileId, Long version, long size) throws IOException {
+        if (!enabled || version == null || size > maxFileBytes) {
+            return null;
+        }
+        String key = key(driveFileId, version);
+        if (entries.getIfPresent(key) != null || !fillsInProgress.add(key)) {
+            return null;
+        }
+        if (!reserve(weight(size))) {
+            fillsInProgress.remove(key);
+            return null;
+        }
+        try {
+            Path file = directory.resolve(UUID.randomUUID().toString());
+            return new Fill(key, size, file, Files.newOutputStream(file, StandardOpenOption.CREATE_NEW));
+        } catch (IOException e) {
+            release(weight(size));
+            fillsInProgress.remove(key);
+            throw e;
+        }
+    }
+
+    private static String key(String driveFileId, long version) {
+        return driveFileId + ":" + version;
+    }
+
+    // Weight of a file in the cache, in KB
+    private static int weight(long size) {
+        return (int) Math.max(1, (size + 1023) / 1024);
+    }
+
+    // Shrink the cache by the weight of a file about to be written, evicting cached files if they no longer
+    // fit, so cached files and fills in progress together stay within the limit
+    private synchronized boolean reserve(long weight) {
+        if (reservedWeight + weight > maxWeight) {
+            return false;
+        }
+        reservedWeight += weight;
+        eviction.setMaximum(maxWeight - reservedWeight);
+        return true;
+    }
+
+    private synchronized void release(long weight) {
+        reservedWeight -= weight;
+        eviction.setMaximum(maxWeight - reservedWeight);
+    }
+
+    // The file may be about to be sent by sendfile, which opens it after the request thread has returned,
+    // so it is only deleted after a grace period
+    private void delete(Path file) {
+        if (deleteGraceSec <= 0) {
+            deleteQuietly(file);
+        } else {
+            CompletableFuture.delayedExecutor(deleteGraceSec, TimeUnit.SECONDS).execute(() -> deleteQuietly(file));
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete cached content {}: {}", file, e.getMessage());
+        }
+    }
+
+    public class CachedContent implements Closeable {
+
+        private final Entry entry;
+
+        private final FileChannel channel;
+
+        private CachedContent(Entry entry, FileChannel channel) {
+            this.entry = entry;
+            this.channel = channel;
+        }
+
+        // Hand bytes start to end (inclusive) to Tomcat's sendfile, which sends them once the request thread
+        // returns without holding a thread. Returns false if the connector has no sendfile support.
+        // The response headers have to be set already.
+        public boolean handOff(long start, long end, HttpServletRequest request) {
+            if (!Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+                return false;
+            }
+            request.setAttribute(SENDFILE_FILENAME, entry.file().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            servedBytes.increment(end - start + 1);
+            return true;
+        }
+
+        // Send bytes start to end (inclusive) to the stream with FileChannel.transferTo. A servlet stream is
+        // not a file or socket channel, so this goes through a heap buffer, unlike handOff.
+        public void transferTo(long start, long end, OutputStream outputStream) throws IOException {
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            long position = start;
+            while (position <= end) {
+                long sent = channel.transferTo(position, end - position + 1, target);
+                if (sent <= 0 && position >= channel.size()) {
+                    throw new IOException("Cached content is shorter than expected");
+                }
+                position += sent;
+            }
+            servedBytes.increment(end - start + 1);
+        }
+
+        public long getSize() {
+            return entry.size();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    public class Fill implements Closeable {
+
+        private final String key;
+
+        private final long size;
+
+        private final Path file;
+
+        private final OutputStream disk;
+
+        private long written;
+
+        private boolean failed;
+
+        private boolean committed;
+
+        private boolean reserved = true;
+
+        private Fill(String key, long size, Path file, OutputStream disk) {
+            this.key = key;
+            this.size = size;
+            this.file = file;
+            this.disk = disk;
+        }
+
+        // Everything written to the returned stream goes to the client and to the cache file. If the
+        // cache file cannot be written the download carries on and the file is not cached.
+        public OutputStream wrap(OutputStream client) {
+            return new FilterOutputStream(client) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    copy(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] buffer, int offset, int length) throws IOException {
+                    out.write(buffer, offset, length);
+                    copy(buffer, offset, length);
+                }
+            };
+        }
+
+        private void copy(byte[] buffer, int offset, int length) {
+            if (failed) {
+                return;
+            }
+            try {
+                disk.write(buffer, offset, length);
+                written += length;
+            } catch (IOException e) {
+                log.warn("Could not cache content {}: {}", key, e.getMessage());
+                failed = true;
+            }
+        }
+
+        // Add the file to the cache, if all of it was written
+        public void commit() {
+            try {
+                disk.close();
+            } catch (IOException e) {
+                failed = true;
+            }
+            if (!failed && written == size) {
+                committed = true;
+                // The reservation goes first, the file takes its room in the cache
+                releaseReservation();
+                storedBytes.addAndGet(size);
+                entries.put(key, new Entry(file, size));
+            }
+        }
+
+        private void releaseReservation() {
+            if (reserved) {
+                reserved = false;
+                release(weight(size));
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                disk.close();
+            } catch (IOException e) {
+                log.warn("Could not close cached content {}: {}", key, e.getMessage());
+            }
+            if (!committed) {
+                deleteQuietly(file);
+            }
+            releaseReservation();
+            fillsInProgress.remove(key);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.strac.files.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.strac.files.models.dto.FilePageDTO;
+import com.strac.files.models.dto.FileQuery;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * In-memory cache of listing pages, so repeated /files calls do not go to Postgres.
+ * Entries are weighed by the number of files they hold, expire after a TTL and are dropped
+ * for a user whenever that user's files change. Hit/miss counts, evictions and load time are
+ * published to the meter registry as cache.* metrics tagged with cache=file-listing.
+ */
+@Component
+public class FileListingCache {
+
+    private final Cache<ListingKey, FilePageDTO> cache;
+
+    public record ListingKey(String userId, FileQuery query, String cursor, int pageSize) {
+    }
+
+    public FileListingCache(@Value("${files.listing.cache.max.weight}") long maxWeight,
+                            @Value("${files.listing.cache.ttl.sec}") long ttlSec,
+                            MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((ListingKey key, FilePageDTO page) -> page.getFiles().size() + 1)
+                .expireAfterWrite(Duration.ofSeconds(ttlSec))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "file-listing");
+    }
+
+    public FilePageDTO get(ListingKey key, Supplier<FilePageDTO> loader) {
+        return cache.get(key, k -> loader.get());
+    }
+
+    // Drop every cached page of the user. When called inside a transaction this runs again after commit,
+    // so a page loaded by a concurrent request before the commit cannot outlive the change.
+    public void invalidate(String userId) {
+        evict(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(userId);
+                }
+            });
+        }
+    }
+
+    private void evict(String userId) {
+        cache.asMap().keySet().removeIf(key -> key.userId().equals(userId));
+    }
+}
@@ -0,0 +1,72 @@
+package com.strac.files.cache;
+
+import com.strac.files.models.dto.FileMetadataDTO;
+import com.strac.files.models.dto.UploadJobDTO;
+import lombok.Getter;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * An upload that was accepted from the client and is sent to Drive in the background.
+ * Written by the worker running it and read by status requests, hence the volatile fields.
+ */
+@Getter
+public class UploadJob {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final String jobId;
+
+    private final String userId;
+
+    private final String fileName;
+
+    private final String contentType;
+
+    private final long totalBytes;
+
+    private volatile Status status = Status.QUEUED;
+
+    private volatile long bytesUploaded;
+
+    private volatile FileMetadataDTO file;
+
+    private volatile String error;
+
+    public UploadJob(String jobId, String userId, String fileName, String contentType, long totalBytes) {
+        this.jobId = jobId;
+        this.userId = userId;
+        this.fileName = fileName;
+        this.contentType = contentType;
+        this.totalBytes = totalBytes;
+    }
+
+    public void start() {
+        status = Status.RUNNING;
+    }
+
+    public void setBytesUploaded(long bytesUploaded) {
+        this.bytesUploaded = bytesUploaded;
+    }
+
+    public void complete(FileMetadataDTO file) {
+        this.file = file;
+        this.bytesUploaded = totalBytes;
+        this.status = Status.COMPLETED;
+    }
+
+    public void fail(String error) {
+        this.error = error;
+        this.status = Status.FAILED;
+    }
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    public UploadJobDTO toDto() {
+        return new UploadJobDTO(jobId, fileName, status, bytesUploaded, totalBytes, file, error);
+    }
+}
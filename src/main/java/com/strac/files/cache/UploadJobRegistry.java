@@ -0,0 +1,69 @@
+package com.strac.files.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * Background upload jobs of this instance, kept in memory so progress can be polled without touching the DB.
+ * Jobs stay for as long as they run and for a retention period once finished, after which the result
+ * is only in file_metadata.
+ */
+@Component
+public class UploadJobRegistry {
+
+    private final Cache<String, UploadJob> jobs;
+
+    public UploadJobRegistry(@Value("${files.upload.jobs.max}") long maxJobs,
+                             @Value("${files.upload.jobs.retention.min}") long retentionMin) {
+        long retentionNanos = Duration.ofMinutes(retentionMin).toNanos();
+        this.jobs = Caffeine.newBuilder()
+                .maximumSize(maxJobs)
+                .expireAfter(new Expiry<String, UploadJob>() {
+                    @Override
+                    public long expireAfterCreate(String jobId, UploadJob job, long currentTime) {
+                        return job.isFinished() ? retentionNanos : Long.MAX_VALUE;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String jobId, UploadJob job, long currentTime, long currentDuration) {
+                        return job.isFinished() ? retentionNanos : Long.MAX_VALUE;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String jobId, UploadJob job, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    public UploadJob create(String userId, String fileName, String contentType, long totalBytes) {
+        UploadJob job = new UploadJob(UUID.randomUUID().toString(), userId, fileName, contentType, totalBytes);
+        jobs.put(job.getJobId(), job);
+        return job;
+    }
+
+    // Only the user who submitted a job can see it
+    public Optional<UploadJob> find(String userId, String jobId) {
+        return Optional.ofNullable(jobs.getIfPresent(jobId))
+                .filter(job -> job.getUserId().equals(userId));
+    }
+
+    // Starts the retention period of a job that has finished
+    public void finished(UploadJob job) {
+        jobs.put(job.getJobId(), job);
+    }
+
+    public void remove(UploadJob job) {
+        jobs.invalidate(job.getJobId());
+    }
+}
@@ -0,0 +1,108 @@
+package com.strac.files.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * Thread pools for work that runs outside of the request thread.
+ * Each pool is bounded, so a burst of work queues up (or is turned away) instead of piling up threads.
+ */
+@Configuration
+public class ExecutorConfig {
+
+    // Runs Drive syncs that refresh a stale listing after the stale listing was already returned
+    @Bean
+    public ThreadPoolTaskExecutor driveSyncExecutor(@Value("${files.sync.executor.threads}") int threads,
+                                                    @Value("${files.sync.executor.queue.capacity}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("drive-sync-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    // Writes streamed responses, such as the NDJSON file listing
+    @Bean
+    public ThreadPoolTaskExecutor responseStreamingExecutor(@Value("${files.streaming.executor.threads}") int threads,
+                                                            @Value("${files.streaming.executor.queue.capacity}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("response-streaming-");
+        return executor;
+    }
+
+    // Reads streamed uploads from the client ahead of the Drive transfer. There is no queue:
+    // when every thread is busy, an upload reads from the client itself instead of waiting.
+    @Bean
+    public ThreadPoolTaskExecutor uploadReadAheadExecutor(@Value("${files.upload.read.ahead.executor.threads}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("upload-read-ahead-");
+        return executor;
+    }
+
+    // Sends the files of batch uploads to Drive. When the queue is full the request thread uploads the file
+    // itself, which slows that request down instead of turning files away.
+    @Bean
+    public ThreadPoolTaskExecutor driveUploadExecutor(@Value("${files.upload.executor.threads}") int threads,
+                                                      @Value("${files.upload.executor.queue.capacity}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("drive-upload-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
+    }
+
+    // Sends downloads to clients, so a slow client or a slow Drive holds one of these threads instead of a Tomcat
+    // worker. When every thread is busy and the queue is full, the download is turned away with 503.
+    @Bean
+    public ThreadPoolTaskExecutor downloadStreamingExecutor(@Value("${files.download.streaming.executor.threads}") int threads,
+                                                            @Value("${files.download.streaming.executor.queue.capacity}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("download-streaming-");
+        return executor;
+    }
+
+    // Fetches the files of ZIP downloads and the parts of large downloads from Drive ahead of the response
+    // writer. A full queue turns the fetch away, and the writer then fetches that file or part itself.
+    @Bean
+    public ThreadPoolTaskExecutor driveDownloadExecutor(@Value("${files.download.executor.threads}") int threads,
+                                                        @Value("${files.download.executor.queue.capacity}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("drive-download-");
+        return executor;
+    }
+
+    // Runs background upload jobs. A full queue turns new jobs away (503) rather than spooling without limit.
+    @Bean
+    public ThreadPoolTaskExecutor uploadJobExecutor(@Value("${files.upload.jobs.executor.threads}") int threads,
+                                                    @Value("${files.upload.jobs.executor.queue.capacity}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("upload-job-");
+        return executor;
+    }
+}
@@ -1,6 +1,7 @@
 package com.strac.files.config;
 
 import com.strac.files.interceptors.JwtRequestFilter;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -27,6 +28,9 @@ public class SecurityConfig {
         http
             .csrf(AbstractHttpConfigurer::disable)
             .authorizeHttpRequests(auth -> auth
+                    // The request was authorized before it went async. JwtRequestFilter only runs on the
+                    // first dispatch, so streamed bodies and error pages would otherwise be denied.
+                    .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
                     .requestMatchers("/api/auth/**", "/api/test/**").permitAll() // Public endpoints
                     .anyRequest().authenticated() // Protect all other endpoints
             )
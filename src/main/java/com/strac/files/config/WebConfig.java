@@ -0,0 +1,46 @@
+package com.strac.files.config;
+
+import com.strac.files.interceptors.UploadAdmissionInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * Streamed responses (StreamingResponseBody) are written from responseStreamingExecutor
+ * instead of an unbounded thread per request. Multipart uploads are admitted against the transfer
+ * budget before their body is parsed.
+ */
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    @Autowired
+    @Qualifier("responseStreamingExecutor")
+    private AsyncTaskExecutor responseStreamingExecutor;
+
+    @Autowired
+    private UploadAdmissionInterceptor uploadAdmissionInterceptor;
+
+    @Value("${files.streaming.timeout.sec}")
+    private long streamingTimeoutSec;
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(responseStreamingExecutor);
+        configurer.setDefaultTimeout(streamingTimeoutSec * 1000);
+    }
+
+    // /upload/stream is left out, it reads the body itself and only holds its buffers
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(uploadAdmissionInterceptor)
+                .addPathPatterns("/api/google-drive/upload", "/api/google-drive/upload/batch",
+                        "/api/google-drive/upload/jobs");
+    }
+}
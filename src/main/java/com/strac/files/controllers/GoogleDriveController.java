@@ -1,16 +1,34 @@
 package com.strac.files.controllers;
 
+import com.strac.files.interceptors.UploadAdmissionInterceptor;
+import com.strac.files.models.dto.BatchDeleteRequest;
+import com.strac.files.models.dto.DeleteResultDTO;
 import com.strac.files.models.dto.FileMetadataDTO;
+import com.strac.files.models.dto.FilePageDTO;
+import com.strac.files.models.dto.FileQuery;
+import com.strac.files.models.dto.UploadJobDTO;
+import com.strac.files.models.dto.UploadResultDTO;
+import com.strac.files.models.dto.UploadSessionDTO;
+import com.strac.files.models.dto.UploadSessionRequest;
+import com.strac.files.models.dto.ZipDownloadRequest;
 import com.strac.files.services.FileService;
 import com.strac.files.services.OAuth2Service;
+import com.strac.files.services.UploadSessionService;
+import com.strac.files.utils.TransferBudget;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.net.URI;
 import java.util.List;
 
 /**
@@ -25,25 +43,114 @@ public class GoogleDriveController {
     @Autowired
     FileService fileService;
 
+    @Autowired
+    UploadSessionService uploadSessionService;
+
     @Autowired
     OAuth2Service auth;
 
-    // List files in Google Drive
+    // List files in Google Drive, one page at a time, optionally filtered and sorted.
+    // The filters (namePrefix, nameContains, mimeType, modifiedAfter, modifiedBefore, sort) bind into FileQuery.
     @GetMapping("/files")
-    public List<FileMetadataDTO> listFiles() throws IOException {
-        return fileService.listAllFilesByUserId(auth.getOauthId());
+    public FilePageDTO listFiles(@RequestParam(required = false) String cursor,
+                                 @RequestParam(required = false) Integer pageSize,
+                                 FileQuery query) throws IOException {
+        return fileService.listFilesByUserId(auth.getOauthId(), query, cursor, pageSize);
+    }
+
+    // Stream all files in Google Drive as newline-delimited JSON, one file per line
+    @GetMapping(value = "/files/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamFiles() throws IOException {
+        return fileService.streamFilesByUserId(auth.getOauthId());
     }
 
-    // Upload a file to Google Drive
+    // Look up a file with the given content before uploading it. 404 when there is none.
+    @GetMapping("/files/by-content")
+    public FileMetadataDTO findFileByContent(@RequestParam String md5Checksum, @RequestParam long size) {
+        return fileService.findFileByContent(auth.getOauthId(), md5Checksum, size);
+    }
+
+    // Upload a file to Google Drive. With an X-Content-MD5 header (hex) matching a file the user
+    // already has, that file is returned instead of uploading the content again.
     @PostMapping("/upload")
-    public FileMetadataDTO uploadFile(@RequestParam MultipartFile file) throws IOException {
-        return fileService.uploadFile(file, auth.getOauthId());
+    public FileMetadataDTO uploadFile(@RequestParam MultipartFile file,
+                                      @RequestHeader(value = "X-Content-MD5", required = false) String contentMd5)
+            throws IOException {
+        return fileService.uploadFile(file, auth.getOauthId(), contentMd5);
+    }
+
+    // Upload the files of a multipart request to Google Drive while the request is still being received
+    @PostMapping(value = "/upload/stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public List<FileMetadataDTO> streamUpload(HttpServletRequest request) throws IOException {
+        return fileService.streamUpload(request, auth.getOauthId());
+    }
+
+    // Upload a file to Google Drive in the background. Answers 202 with a job to poll once the file is received.
+    @PostMapping("/upload/jobs")
+    public ResponseEntity<UploadJobDTO> submitUploadJob(
+            @RequestParam MultipartFile file,
+            @RequestAttribute(UploadAdmissionInterceptor.PERMIT_ATTRIBUTE) TransferBudget.Permit permit)
+            throws IOException {
+        UploadJobDTO job = fileService.submitUploadJob(file, auth.getOauthId(), permit);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/google-drive/upload/jobs/" + job.getJobId()))
+                .body(job);
+    }
+
+    // Status and progress of a background upload
+    @GetMapping("/upload/jobs/{jobId}")
+    public UploadJobDTO getUploadJob(@PathVariable String jobId) {
+        return fileService.getUploadJob(auth.getOauthId(), jobId);
+    }
+
+    // Upload many files to Google Drive in one request, with a result for each file
+    @PostMapping("/upload/batch")
+    public List<UploadResultDTO> uploadFiles(@RequestParam List<MultipartFile> files) throws IOException {
+        return fileService.uploadFiles(files, auth.getOauthId());
+    }
+
+    // Start a resumable upload. The session is stored, so it can be continued from any node.
+    @PostMapping("/upload/sessions")
+    public UploadSessionDTO createUploadSession(@RequestBody UploadSessionRequest request) throws IOException {
+        return uploadSessionService.createSession(auth.getOauthId(), request);
+    }
+
+    // State of a resumable upload, including the offset to continue from
+    @GetMapping("/upload/sessions/{sessionId}")
+    public UploadSessionDTO getUploadSession(@PathVariable String sessionId) throws IOException {
+        return uploadSessionService.getSession(auth.getOauthId(), sessionId);
+    }
+
+    // Send the content of a resumable upload, or the rest of it, starting at the given offset
+    @PutMapping(value = "/upload/sessions/{sessionId}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public UploadSessionDTO uploadToSession(@PathVariable String sessionId, @RequestParam long offset,
+                                            HttpServletRequest request) throws IOException {
+        return uploadSessionService.uploadToSession(auth.getOauthId(), sessionId, offset, request.getInputStream());
     }
 
-    // Download a file from Google Drive
+    // Download a file from Google Drive, or the byte range of it given in a Range header.
+    // The content is sent asynchronously, off the request thread.
     @GetMapping("/download/{fileId}")
-    public void downloadFile( @PathVariable String fileId, HttpServletResponse response) throws IOException {
-        fileService.downloadFile(fileId, auth.getOauthId(), response);
+    public WebAsyncTask<Void> downloadFile(@PathVariable String fileId, HttpServletRequest request,
+                                           HttpServletResponse response) throws IOException {
+        return fileService.downloadFile(fileId, auth.getOauthId(), request, response);
+    }
+
+    // Export a Google Docs, Sheets or Slides file converted to the given MIME type, such as application/pdf
+    @GetMapping("/export/{fileId}")
+    public void exportFile(@PathVariable String fileId, @RequestParam String mimeType, HttpServletResponse response)
+            throws IOException {
+        fileService.exportFile(fileId, mimeType, auth.getOauthId(), response);
+    }
+
+    // Download several files from Google Drive as one ZIP archive, streamed while the files are fetched
+    @PostMapping(value = "/download/zip", produces = "application/zip")
+    public ResponseEntity<StreamingResponseBody> downloadZip(@RequestBody ZipDownloadRequest request)
+            throws IOException {
+        StreamingResponseBody body = fileService.downloadZip(request.getFileIds(), auth.getOauthId());
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"files.zip\"")
+                .body(body);
     }
 
     // Delete a file from Google Drive
@@ -52,4 +159,9 @@ public class GoogleDriveController {
         fileService.deleteFileByDriveFileId(auth.getOauthId(), fileId);
         return ResponseEntity.noContent().build();
     }
+
+    @PostMapping("/delete/batch")
+    public List<DeleteResultDTO> deleteFiles(@RequestBody BatchDeleteRequest request) throws IOException {
+        return fileService.deleteFiles(request.getFileIds(), auth.getOauthId());
+    }
 }
@@ -0,0 +1,10 @@
+package com.strac.files.exceptions;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+public class BadRequestException extends RuntimeException {
+    public BadRequestException(String message) {
+        super(message);
+    }
+}
@@ -1,6 +1,9 @@
 package com.strac.files.exceptions;
 
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.fileupload2.core.FileUploadSizeException;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -42,15 +45,46 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(body, UNAUTHORIZED);
     }
 
-    // Handle MaxUploadSizeExceededException
-    @ExceptionHandler(MaxUploadSizeExceededException.class)
-    public ResponseEntity<Object> handleMaxSizeException(MaxUploadSizeExceededException ex, WebRequest request) {
+    // Handle BadRequestException
+    @ExceptionHandler(BadRequestException.class)
+    public ResponseEntity<Object> handleBadRequestException(
+            BadRequestException ex, WebRequest request) {
+
+        Map<String, Object> body = getStringObjectMap(ex.getMessage(), request);
+        log.error(ex.getMessage(), ex);
+
+        return new ResponseEntity<>(body, BAD_REQUEST);
+    }
+
+    // Handle MaxUploadSizeExceededException, and FileUploadSizeException from streamed uploads
+    @ExceptionHandler({MaxUploadSizeExceededException.class, FileUploadSizeException.class})
+    public ResponseEntity<Object> handleMaxSizeException(Exception ex, WebRequest request) {
         Map<String, Object> body = getStringObjectMap("File exceeds maximum upload size", request);
         log.error("Error: {}", ex.getMessage(), ex);
 
         return new ResponseEntity<>(body, PAYLOAD_TOO_LARGE);
     }
 
+    // Handle TooManyRequestsException, telling the client when to try again
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<Object> handleTooManyRequestsException(TooManyRequestsException ex, WebRequest request) {
+        Map<String, Object> body = getStringObjectMap(ex.getMessage(), request);
+        log.warn(ex.getMessage());
+
+        return ResponseEntity.status(TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(body);
+    }
+
+    // Handle TaskRejectedException, thrown when a worker pool has no room left for more work
+    @ExceptionHandler(TaskRejectedException.class)
+    public ResponseEntity<Object> handleTaskRejectedException(TaskRejectedException ex, WebRequest request) {
+        Map<String, Object> body = getStringObjectMap("Server is busy, try again later", request);
+        log.error("Error: {}", ex.getMessage(), ex);
+
+        return new ResponseEntity<>(body, SERVICE_UNAVAILABLE);
+    }
+
     // Handle generic exceptions
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Object> handleGlobalException(
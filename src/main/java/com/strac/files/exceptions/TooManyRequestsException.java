@@ -0,0 +1,17 @@
+package com.strac.files.exceptions;
+
+import lombok.Getter;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+@Getter
+public class TooManyRequestsException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public TooManyRequestsException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
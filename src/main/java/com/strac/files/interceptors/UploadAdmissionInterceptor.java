@@ -0,0 +1,57 @@
+package com.strac.files.interceptors;
+
+import com.strac.files.utils.TransferBudget;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.io.IOException;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * Admits multipart uploads against the transfer budget before their body is read. Multipart requests
+ * are parsed lazily, when the handler asks for its parts, and parsing is what makes Tomcat spool the body
+ * to disk. Taking the share here, on the Content-Length, turns a request away with 429 while it has cost
+ * no more than its headers. The share is held until the request completes, unless the handler hands it
+ * on with Permit.transfer, as background upload jobs do.
+ */
+@Component
+public class UploadAdmissionInterceptor implements HandlerInterceptor {
+
+    public static final String PERMIT_ATTRIBUTE = "uploadAdmissionPermit";
+
+    @Autowired
+    private TransferBudget transferBudget;
+
+    @Value("${spring.servlet.multipart.max-request-size}")
+    private DataSize maxRequestSize;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws IOException {
+        String contentType = request.getContentType();
+        if (contentType == null || !contentType.toLowerCase().startsWith("multipart/")) {
+            return true;
+        }
+
+        // A chunked body has no length up front, it is charged the most a request may send
+        long length = request.getContentLengthLong();
+        TransferBudget.Permit permit = transferBudget.acquire(length < 0 ? maxRequestSize.toBytes() : length,
+                TransferBudget.Direction.UPLOAD);
+        request.setAttribute(PERMIT_ATTRIBUTE, permit);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        if (request.getAttribute(PERMIT_ATTRIBUTE) instanceof TransferBudget.Permit permit) {
+            permit.close();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.strac.files.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * Keeps track of where each user's file_metadata rows are in relation to their Google Drive.
+ * The start page token is the cursor handed out by the Drive Changes API, so the next sync
+ * only has to ask Drive for what changed since then instead of listing every file again.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "drive_sync_state")
+public class DriveSyncState extends BaseEntity {
+
+    @OneToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false, unique = true)
+    private User user;
+
+    @Column(name = "start_page_token")
+    private String startPageToken;
+
+    @Column(name = "last_synced_at")
+    private LocalDateTime lastSyncedAt;
+}
@@ -1,12 +1,18 @@
 package com.strac.files.models;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.drive.model.File;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
 /**
  * @author Charles on 22/12/2024
  */
@@ -15,7 +21,14 @@ import lombok.Setter;
 @Entity
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "file_metadata")
+@Table(name = "file_metadata", indexes = {
+        @Index(name = "idx_file_metadata_user_name_id", columnList = "user_id, file_name, id"),
+        @Index(name = "idx_file_metadata_user_modified_id", columnList = "user_id, modified_time, id"),
+        @Index(name = "idx_file_metadata_user_mime_type", columnList = "user_id, mime_type"),
+        @Index(name = "idx_file_metadata_user_md5", columnList = "user_id, md5_checksum")
+}, uniqueConstraints = {
+        @UniqueConstraint(name = "uk_file_metadata_user_drive_file", columnNames = {"user_id", "drive_file_id"})
+})
 public class FileMetadata extends BaseEntity {
 
     @JsonIgnoreProperties("files")
@@ -34,6 +47,44 @@ public class FileMetadata extends BaseEntity {
 
     private Long size;
 
+    // Hex MD5 of the content, as reported by Drive. Google Docs files have none.
+    @Column(name = "md5_checksum", length = 32)
+    private String md5Checksum;
+
+    // Drive's version number of the file, which goes up with every change to it
+    @Column(name = "drive_version")
+    private Long driveVersion;
+
+    // Last modification time of the file in Drive, as opposed to updatedAt which tracks our own row
+    @Column(name = "modified_time")
+    private LocalDateTime modifiedTime;
+
     @Column(name = "is_deleted")
     private boolean isDeleted = false;
+
+    public static FileMetadata fromDriveFile(File file, User user) {
+        FileMetadata entity = new FileMetadata();
+        entity.setUser(user);
+        entity.updateFromDriveFile(file);
+        return entity;
+    }
+
+    // Copy the fields we keep locally from a Drive file
+    public void updateFromDriveFile(File file) {
+        setDriveFileId(file.getId());
+        setFileName(file.getName());
+        setMimeType(file.getMimeType());
+        setSize(file.getSize());
+        setMd5Checksum(file.getMd5Checksum());
+        setDriveVersion(file.getVersion());
+        setModifiedTime(toLocalDateTime(file.getModifiedTime()));
+        setUpdatedAt(LocalDateTime.now());
+    }
+
+    public static LocalDateTime toLocalDateTime(DateTime dateTime) {
+        if (dateTime == null) {
+            return null;
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(dateTime.getValue()), ZoneOffset.UTC);
+    }
 }
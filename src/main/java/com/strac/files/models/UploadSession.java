@@ -0,0 +1,58 @@
+package com.strac.files.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * A resumable upload to Google Drive. Drive keeps the bytes it has received against the session URI,
+ * and this row keeps the URI and how far the upload got, so the upload can be picked up again
+ * from any node after a restart instead of starting over.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "upload_sessions")
+public class UploadSession extends BaseEntity {
+
+    public enum Status {
+        ACTIVE, COMPLETED, EXPIRED
+    }
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    // Handed to the client, so the row id does not have to be
+    @Column(name = "session_id", nullable = false, unique = true, length = 36)
+    private String sessionId;
+
+    @Column(name = "drive_session_uri", nullable = false, length = 2048)
+    private String driveSessionUri;
+
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+
+    @Column(name = "mime_type", nullable = false)
+    private String mimeType;
+
+    @Column(name = "total_size", nullable = false)
+    private long totalSize;
+
+    // Number of bytes Drive has confirmed, the next upload to the session has to start here
+    @Column(name = "committed_offset", nullable = false)
+    private long committedOffset;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status;
+
+    @Column(name = "drive_file_id")
+    private String driveFileId;
+}
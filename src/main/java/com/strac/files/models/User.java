@@ -15,7 +15,9 @@ import java.util.Set;
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "users")
+@Table(name = "users", indexes = {
+        @Index(name = "idx_users_oauth_id", columnList = "oauth_id")
+})
 public class User extends BaseEntity {
 
     @Column(nullable = false)
@@ -0,0 +1,18 @@
+package com.strac.files.models.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchDeleteRequest {
+    private List<String> fileIds;
+}
@@ -0,0 +1,28 @@
+package com.strac.files.models.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * Outcome of one file of a batch delete. The error is set when the file was not deleted.
+ */
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeleteResultDTO {
+    private String driveFileId;
+    private boolean deleted;
+    private String error;
+
+    public static DeleteResultDTO success(String driveFileId) {
+        return new DeleteResultDTO(driveFileId, true, null);
+    }
+
+    public static DeleteResultDTO failure(String driveFileId, String error) {
+        return new DeleteResultDTO(driveFileId, false, error);
+    }
+}
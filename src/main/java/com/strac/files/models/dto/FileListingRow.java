@@ -0,0 +1,18 @@
+package com.strac.files.models.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * One row of a listing page, selected straight into this record by a constructor expression.
+ * Nothing is loaded into the persistence context, so there is no User proxy and no dirty-checking
+ * snapshot per row. The id is only kept to build the cursor of the next page.
+ */
+public record FileListingRow(long id, String driveFileId, String fileName, String mimeType,
+                             LocalDateTime updatedAt, LocalDateTime modifiedTime) {
+
+    public FileMetadataDTO toDto() {
+        return new FileMetadataDTO(driveFileId, fileName, mimeType, updatedAt, modifiedTime);
+    }
+}
@@ -19,6 +19,7 @@ public class FileMetadataDTO {
     private String fileName;
     private String mimeType;
     private LocalDateTime updatedAt;
+    private LocalDateTime modifiedTime;
 
     public static FileMetadataDTO fromEntity(FileMetadata entity) {
         FileMetadataDTO dto = new FileMetadataDTO();
@@ -26,6 +27,7 @@ public class FileMetadataDTO {
         dto.setFileName(entity.getFileName());
         dto.setMimeType(entity.getMimeType());
         dto.setUpdatedAt(entity.getUpdatedAt());
+        dto.setModifiedTime(entity.getModifiedTime());
         return dto;
     }
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package com.strac.files.models.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * One page of a file listing. nextCursor is null on the last page,
+ * otherwise it is passed back as the cursor to get the next page.
+ */
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FilePageDTO {
+    private List<FileMetadataDTO> files;
+    private String nextCursor;
+}
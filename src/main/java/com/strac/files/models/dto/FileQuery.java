@@ -0,0 +1,32 @@
+package com.strac.files.models.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * Filters and sort order of a file listing, bound from the /files query parameters.
+ * Every filter is optional; an empty query lists all files sorted by name.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileQuery {
+    private String namePrefix;
+    private String nameContains;
+    private String mimeType;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime modifiedAfter;
+
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime modifiedBefore;
+
+    // One of name, -name, modified or -modified, a leading '-' sorts descending
+    private String sort;
+}
@@ -0,0 +1,39 @@
+package com.strac.files.models.dto;
+
+import com.google.api.services.drive.model.File;
+import com.strac.files.models.FileMetadata;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * Projection of the file_metadata columns that are copied from Drive.
+ * Used to work out which rows actually changed before writing anything.
+ */
+public interface FileSnapshot {
+
+    String getDriveFileId();
+
+    String getFileName();
+
+    String getMimeType();
+
+    LocalDateTime getModifiedTime();
+
+    Long getSize();
+
+    String getMd5Checksum();
+
+    Long getDriveVersion();
+
+    default boolean matches(File file) {
+        return Objects.equals(getFileName(), file.getName()) &&
+                Objects.equals(getMimeType(), file.getMimeType()) &&
+                Objects.equals(getModifiedTime(), FileMetadata.toLocalDateTime(file.getModifiedTime())) &&
+                Objects.equals(getSize(), file.getSize()) &&
+                Objects.equals(getMd5Checksum(), file.getMd5Checksum()) &&
+                Objects.equals(getDriveVersion(), file.getVersion());
+    }
+}
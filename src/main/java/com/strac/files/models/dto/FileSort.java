@@ -0,0 +1,66 @@
+package com.strac.files.models.dto;
+
+import com.strac.files.exceptions.BadRequestException;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * Sort orders a file listing supports. Each one is backed by a (user_id, column, id) index,
+ * and ties are broken by id so the order is stable for keyset pagination.
+ */
+public enum FileSort {
+    NAME_ASC("name", "fileName", true),
+    NAME_DESC("-name", "fileName", false),
+    MODIFIED_ASC("modified", "modifiedTime", true),
+    MODIFIED_DESC("-modified", "modifiedTime", false);
+
+    private final String param;
+    private final String property;
+    private final boolean ascending;
+
+    FileSort(String param, String property, boolean ascending) {
+        this.param = param;
+        this.property = property;
+        this.ascending = ascending;
+    }
+
+    public static FileSort fromParam(String param) {
+        if (param == null || param.isEmpty()) {
+            return NAME_ASC;
+        }
+        for (FileSort sort : values()) {
+            if (sort.param.equals(param)) {
+                return sort;
+            }
+        }
+        throw new BadRequestException("Unsupported sort: " + param);
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    // The value of the sort column of a row, as it is stored in a cursor
+    public String cursorKey(FileListingRow row) {
+        return this == NAME_ASC || this == NAME_DESC ? row.fileName() : String.valueOf(row.modifiedTime());
+    }
+
+    // Turn a cursor key back into a value that can be compared with the sort column
+    public Object parseCursorKey(String key) {
+        if (this == NAME_ASC || this == NAME_DESC) {
+            return key;
+        }
+        try {
+            return LocalDateTime.parse(key);
+        } catch (DateTimeParseException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+}
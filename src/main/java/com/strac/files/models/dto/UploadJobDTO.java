@@ -0,0 +1,23 @@
+package com.strac.files.models.dto;
+
+import com.strac.files.cache.UploadJob;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadJobDTO {
+    private String jobId;
+    private String fileName;
+    private UploadJob.Status status;
+    private long bytesUploaded;
+    private long totalBytes;
+    private FileMetadataDTO file;
+    private String error;
+}
@@ -0,0 +1,28 @@
+package com.strac.files.models.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * Outcome of one file of a batch upload. Exactly one of file and error is set.
+ */
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadResultDTO {
+    private String fileName;
+    private FileMetadataDTO file;
+    private String error;
+
+    public static UploadResultDTO success(String fileName, FileMetadataDTO file) {
+        return new UploadResultDTO(fileName, file, null);
+    }
+
+    public static UploadResultDTO failure(String fileName, String error) {
+        return new UploadResultDTO(fileName, null, error);
+    }
+}
@@ -0,0 +1,35 @@
+package com.strac.files.models.dto;
+
+import com.strac.files.models.UploadSession;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSessionDTO {
+    private String sessionId;
+    private String fileName;
+    private String mimeType;
+    private long size;
+    private long committedOffset;
+    private UploadSession.Status status;
+    private String driveFileId;
+
+    public static UploadSessionDTO fromEntity(UploadSession entity) {
+        UploadSessionDTO dto = new UploadSessionDTO();
+        dto.setSessionId(entity.getSessionId());
+        dto.setFileName(entity.getFileName());
+        dto.setMimeType(entity.getMimeType());
+        dto.setSize(entity.getTotalSize());
+        dto.setCommittedOffset(entity.getCommittedOffset());
+        dto.setStatus(entity.getStatus());
+        dto.setDriveFileId(entity.getDriveFileId());
+        return dto;
+    }
+}
@@ -0,0 +1,24 @@
+package com.strac.files.models.repositories;
+
+import com.strac.files.models.DriveSyncState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+
+@Repository
+public interface DriveSyncStateRepository extends JpaRepository<DriveSyncState, Long> {
+
+    Optional<DriveSyncState> findByUser_OauthId(String userId);
+
+    // Just the last sync time, read on every listing request to decide whether the listing is stale
+    @Query("select s.lastSyncedAt from DriveSyncState s where s.user.oauthId = :userId")
+    Optional<LocalDateTime> findLastSyncedAtByUserId(@Param("userId") String userId);
+}
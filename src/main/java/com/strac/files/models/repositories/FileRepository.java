@@ -1,17 +1,44 @@
 package com.strac.files.models.repositories;
 
 import com.strac.files.models.FileMetadata;
+import com.strac.files.models.dto.FileMetadataDTO;
+import com.strac.files.models.dto.FileSnapshot;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
-public interface FileRepository extends JpaRepository<FileMetadata, Long> {
+public interface FileRepository extends JpaRepository<FileMetadata, Long>, FileRepositoryCustom {
 
-    FileMetadata findByDriveFileId(String driveFileId);
+    FileMetadata findByUser_OauthIdAndDriveFileId(String userId, String driveFileId);
 
-    List<FileMetadata> findAllByUser_OauthId(String userId);
+    List<FileMetadata> findByUser_OauthIdAndDriveFileIdIn(String userId, Collection<String> driveFileIds);
 
-    void deleteAllByUser_OauthId(String userId);
+    // A file of the user with the given content, used to skip uploading the same bytes again
+    FileMetadata findFirstByUser_OauthIdAndMd5ChecksumAndSize(String userId, String md5Checksum, Long size);
+
+    // Every file of the user as DTOs, fetched from a DB cursor a few hundred rows at a time.
+    // Must be consumed inside a transaction.
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select new com.strac.files.models.dto.FileMetadataDTO(f.driveFileId, f.fileName, f.mimeType, " +
+            "f.updatedAt, f.modifiedTime) " +
+            "from FileMetadata f where f.user.oauthId = :userId order by f.fileName, f.id")
+    Stream<FileMetadataDTO> streamAllByUser_OauthId(@Param("userId") String userId);
+
+    // Only the Drive columns, used to diff a listing against what is stored
+    List<FileSnapshot> findSnapshotsByUser_OauthId(String userId);
+
+    @Modifying
+    @Query("delete from FileMetadata f where f.user.id = :userId and f.driveFileId in :driveFileIds")
+    int deleteAllByUserIdAndDriveFileIdIn(@Param("userId") long userId,
+                                          @Param("driveFileIds") Collection<String> driveFileIds);
 }
\ No newline at end of file
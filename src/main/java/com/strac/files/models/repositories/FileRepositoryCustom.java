@@ -0,0 +1,20 @@
+package com.strac.files.models.repositories;
+
+import com.strac.files.models.FileMetadata;
+import com.strac.files.models.dto.FileListingRow;
+import com.strac.files.models.dto.FileQuery;
+import com.strac.files.models.dto.FileSort;
+import com.strac.files.utils.CursorUtil;
+
+import java.util.List;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+public interface FileRepositoryCustom {
+
+    void upsertAll(long userId, List<FileMetadata> files);
+
+    // One keyset page of the user's files matching the query, starting after the cursor (null for the first page)
+    List<FileListingRow> findPage(String userId, FileQuery query, FileSort sort, CursorUtil.Cursor after, int limit);
+}
@@ -0,0 +1,139 @@
+package com.strac.files.models.repositories;
+
+import com.strac.files.models.FileMetadata;
+import com.strac.files.models.dto.FileListingRow;
+import com.strac.files.models.dto.FileQuery;
+import com.strac.files.models.dto.FileSort;
+import com.strac.files.utils.CursorUtil;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.FlushModeType;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * Writes Drive files into file_metadata with batched INSERT ... ON CONFLICT statements.
+ * This goes through JDBC because the IDENTITY ids on BaseEntity stop Hibernate from batching inserts.
+ * Rows whose Drive fields have not changed are left alone, so re-sending them costs no write.
+ *
+ * Filtered listings are built as JPQL from whichever filters are set, so Postgres only sees the
+ * predicates it needs and can pick the matching index: the (user_id, sort column, id) indexes for
+ * sorting and paging, and the trigram index from schema.sql for name prefix and substring matches.
+ * They select FileListingRow records rather than entities.
+ */
+public class FileRepositoryCustomImpl implements FileRepositoryCustom {
+
+    private static final int BATCH_SIZE = 500;
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO file_metadata (user_id, drive_file_id, file_name, mime_type, modified_time, size, " +
+            "md5_checksum, drive_version, is_deleted, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, false, ?, ?) " +
+            "ON CONFLICT (user_id, drive_file_id) DO UPDATE SET " +
+            "file_name = EXCLUDED.file_name, mime_type = EXCLUDED.mime_type, modified_time = EXCLUDED.modified_time, " +
+            "size = EXCLUDED.size, md5_checksum = EXCLUDED.md5_checksum, drive_version = EXCLUDED.drive_version, " +
+            "updated_at = EXCLUDED.updated_at " +
+            "WHERE (file_metadata.file_name, file_metadata.mime_type, file_metadata.modified_time, " +
+            "file_metadata.size, file_metadata.md5_checksum, file_metadata.drive_version) IS DISTINCT FROM " +
+            "(EXCLUDED.file_name, EXCLUDED.mime_type, EXCLUDED.modified_time, EXCLUDED.size, " +
+            "EXCLUDED.md5_checksum, EXCLUDED.drive_version)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public void upsertAll(long userId, List<FileMetadata> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(UPSERT_SQL, files, BATCH_SIZE, (ps, file) -> {
+            ps.setLong(1, userId);
+            ps.setString(2, file.getDriveFileId());
+            ps.setString(3, file.getFileName());
+            ps.setString(4, file.getMimeType());
+            ps.setTimestamp(5, file.getModifiedTime() == null ? null : Timestamp.valueOf(file.getModifiedTime()));
+            ps.setObject(6, file.getSize(), Types.BIGINT);
+            ps.setString(7, file.getMd5Checksum());
+            ps.setObject(8, file.getDriveVersion(), Types.BIGINT);
+            ps.setTimestamp(9, now);
+            ps.setTimestamp(10, now);
+        });
+    }
+
+    @Override
+    public List<FileListingRow> findPage(String userId, FileQuery query, FileSort sort,
+                                       CursorUtil.Cursor after, int limit) {
+        StringBuilder jpql = new StringBuilder("select new com.strac.files.models.dto.FileListingRow(" +
+                "f.id, f.driveFileId, f.fileName, f.mimeType, f.updatedAt, f.modifiedTime) " +
+                "from FileMetadata f where f.user.oauthId = :userId");
+        Map<String, Object> params = new HashMap<>();
+        params.put("userId", userId);
+
+        if (hasText(query.getNamePrefix())) {
+            jpql.append(" and lower(f.fileName) like :namePrefix escape '!'");
+            params.put("namePrefix", escapeLike(query.getNamePrefix()) + "%");
+        }
+        if (hasText(query.getNameContains())) {
+            jpql.append(" and lower(f.fileName) like :nameContains escape '!'");
+            params.put("nameContains", "%" + escapeLike(query.getNameContains()) + "%");
+        }
+        if (hasText(query.getMimeType())) {
+            jpql.append(" and f.mimeType = :mimeType");
+            params.put("mimeType", query.getMimeType());
+        }
+        if (query.getModifiedAfter() != null) {
+            jpql.append(" and f.modifiedTime >= :modifiedAfter");
+            params.put("modifiedAfter", query.getModifiedAfter());
+        }
+        if (query.getModifiedBefore() != null) {
+            jpql.append(" and f.modifiedTime < :modifiedBefore");
+            params.put("modifiedBefore", query.getModifiedBefore());
+        }
+
+        String column = "f." + sort.getProperty();
+        String direction = sort.isAscending() ? "asc" : "desc";
+        if (after != null) {
+            jpql.append(" and (").append(column).append(", f.id) ")
+                    .append(sort.isAscending() ? ">" : "<").append(" (:afterKey, :afterId)");
+            params.put("afterKey", sort.parseCursorKey(after.key()));
+            params.put("afterId", after.id());
+        }
+        jpql.append(" order by ").append(column).append(' ').append(direction)
+                .append(", f.id ").append(direction);
+
+        // The rows are plain records, so there is nothing the query would need to flush first
+        TypedQuery<FileListingRow> typedQuery = entityManager.createQuery(jpql.toString(), FileListingRow.class)
+                .setFlushMode(FlushModeType.COMMIT)
+                .setMaxResults(limit);
+        params.forEach(typedQuery::setParameter);
+        return typedQuery.getResultList();
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isEmpty();
+    }
+
+    // Match the user's text literally and case-insensitively
+    private static String escapeLike(String value) {
+        return value.toLowerCase(Locale.ROOT)
+                .replace("!", "!!")
+                .replace("%", "!%")
+                .replace("_", "!_");
+    }
+}
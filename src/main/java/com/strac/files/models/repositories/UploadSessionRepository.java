@@ -0,0 +1,17 @@
+package com.strac.files.models.repositories;
+
+import com.strac.files.models.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, Long> {
+
+    Optional<UploadSession> findBySessionIdAndUser_OauthId(String sessionId, String userId);
+}
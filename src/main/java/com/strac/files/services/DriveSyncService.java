@@ -0,0 +1,15 @@
+package com.strac.files.services;
+
+import java.io.IOException;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+public interface DriveSyncService {
+
+    void syncIfStale(String userId) throws IOException;
+
+    void syncFiles(String userId) throws IOException;
+
+    boolean isFresh(String userId);
+}
@@ -1,9 +1,18 @@
 package com.strac.files.services;
 
 import com.strac.files.models.FileMetadata;
+import com.strac.files.models.dto.DeleteResultDTO;
 import com.strac.files.models.dto.FileMetadataDTO;
+import com.strac.files.models.dto.FilePageDTO;
+import com.strac.files.models.dto.FileQuery;
+import com.strac.files.models.dto.UploadJobDTO;
+import com.strac.files.models.dto.UploadResultDTO;
+import com.strac.files.utils.TransferBudget;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.context.request.async.WebAsyncTask;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
@@ -14,12 +23,30 @@ import java.util.List;
  */
 public interface FileService {
 
-    List<FileMetadataDTO> listAllFilesByUserId(String userId) throws IOException;
+    FilePageDTO listFilesByUserId(String userId, FileQuery query, String cursor, Integer pageSize) throws IOException;
 
-    FileMetadataDTO uploadFile(MultipartFile file, String userId) throws IOException;
+    StreamingResponseBody streamFilesByUserId(String userId) throws IOException;
+
+    FileMetadataDTO uploadFile(MultipartFile file, String userId, String contentMd5) throws IOException;
+
+    FileMetadataDTO findFileByContent(String userId, String md5Checksum, long size);
+
+    UploadJobDTO submitUploadJob(MultipartFile file, String userId, TransferBudget.Permit permit) throws IOException;
+
+    UploadJobDTO getUploadJob(String userId, String jobId);
+
+    List<FileMetadataDTO> streamUpload(HttpServletRequest request, String userId) throws IOException;
+
+    List<UploadResultDTO> uploadFiles(List<MultipartFile> files, String userId) throws IOException;
 
     void deleteFileByDriveFileId(String userId, String driveFileId) throws IOException;
 
-    void downloadFile(String fileId, String userId, HttpServletResponse response)
-            throws IOException;
+    List<DeleteResultDTO> deleteFiles(List<String> fileIds, String userId) throws IOException;
+
+    WebAsyncTask<Void> downloadFile(String fileId, String userId, HttpServletRequest request,
+                                    HttpServletResponse response) throws IOException;
+
+    void exportFile(String fileId, String mimeType, String userId, HttpServletResponse response) throws IOException;
+
+    StreamingResponseBody downloadZip(List<String> fileIds, String userId) throws IOException;
 }
@@ -0,0 +1,20 @@
+package com.strac.files.services;
+
+import com.strac.files.models.dto.UploadSessionDTO;
+import com.strac.files.models.dto.UploadSessionRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+public interface UploadSessionService {
+
+    UploadSessionDTO createSession(String userId, UploadSessionRequest request) throws IOException;
+
+    UploadSessionDTO getSession(String userId, String sessionId) throws IOException;
+
+    UploadSessionDTO uploadToSession(String userId, String sessionId, long offset, InputStream content)
+            throws IOException;
+}
@@ -0,0 +1,61 @@
+package com.strac.files.services.impl;
+
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.http.HttpBackOffIOExceptionHandler;
+import com.google.api.client.http.HttpBackOffUnsuccessfulResponseHandler;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.util.ExponentialBackOff;
+import com.google.api.client.util.Sleeper;
+
+import java.io.IOException;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * Authorizes every Drive request and retries it with exponential backoff on I/O errors,
+ * 5xx responses and 429 rate limiting. Resumable uploads send each chunk as its own request,
+ * so a failed chunk is retried on its own and, on a server error, the media uploader asks Drive
+ * how many bytes it already has before sending the rest.
+ */
+public class DriveRequestInitializer implements HttpRequestInitializer {
+
+    private final Credential credential;
+
+    private final int initialIntervalMillis;
+
+    private final int maxElapsedTimeMillis;
+
+    private Sleeper sleeper = Sleeper.DEFAULT;
+
+    public DriveRequestInitializer(Credential credential, int initialIntervalMillis, int maxElapsedTimeMillis) {
+        this.credential = credential;
+        this.initialIntervalMillis = initialIntervalMillis;
+        this.maxElapsedTimeMillis = maxElapsedTimeMillis;
+    }
+
+    DriveRequestInitializer setSleeper(Sleeper sleeper) {
+        this.sleeper = sleeper;
+        return this;
+    }
+
+    @Override
+    public void initialize(HttpRequest request) throws IOException {
+        credential.initialize(request);
+
+        // The backoff keeps state between attempts, so each request gets its own
+        ExponentialBackOff backOff = new ExponentialBackOff.Builder()
+                .setInitialIntervalMillis(initialIntervalMillis)
+                .setMaxElapsedTimeMillis(maxElapsedTimeMillis)
+                .build();
+        request.setIOExceptionHandler(new HttpBackOffIOExceptionHandler(backOff).setSleeper(sleeper));
+
+        HttpBackOffUnsuccessfulResponseHandler backOffHandler = new HttpBackOffUnsuccessfulResponseHandler(backOff)
+                .setBackOffRequired(response -> response.getStatusCode() == 429 || response.getStatusCode() / 100 == 5)
+                .setSleeper(sleeper);
+        // Let the credential handle 401s first, anything else retryable goes through the backoff
+        request.setUnsuccessfulResponseHandler((retryRequest, response, supportsRetry) ->
+                credential.handleResponse(retryRequest, response, supportsRetry) ||
+                        backOffHandler.handleResponse(retryRequest, response, supportsRetry));
+    }
+}
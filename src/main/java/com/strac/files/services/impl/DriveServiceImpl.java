@@ -9,6 +9,7 @@ import com.strac.files.models.repositories.OAuthTokenRepository;
 import com.strac.files.services.DriveService;
 import com.strac.files.services.OAuth2Service;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
@@ -30,6 +31,12 @@ public class DriveServiceImpl implements DriveService {
     @Autowired
     private OAuthTokenRepository tokenRepository;
 
+    @Value("${drive.retry.initial.interval.ms}")
+    private int retryInitialIntervalMs;
+
+    @Value("${drive.retry.max.elapsed.ms}")
+    private int retryMaxElapsedMs;
+
     // This uses the oauthId to find each user's access token and returns an instance of the user's Drive
     public Drive getDriveService(String userId) {
         if (userId == null) {
@@ -49,11 +56,12 @@ public class DriveServiceImpl implements DriveService {
             }
         }
 
-        // Create and return Drive service using stored/refreshed token
+        // Create and return Drive service using stored/refreshed token, retrying failed requests with backoff
+        GoogleCredential credential = new GoogleCredential().setAccessToken(storedToken.getAccessToken());
         return new Drive.Builder(
                 flow.getTransport(),
                 flow.getJsonFactory(),
-                new GoogleCredential().setAccessToken(storedToken.getAccessToken()))
+                new DriveRequestInitializer(credential, retryInitialIntervalMs, retryMaxElapsedMs))
                 .setApplicationName("Strac Google Drive Demo")
                 .build();
     }
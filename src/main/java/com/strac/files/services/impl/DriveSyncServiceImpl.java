@@ -0,0 +1,339 @@
+package com.strac.files.services.impl;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.Change;
+import com.google.api.services.drive.model.ChangeList;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
+import com.strac.files.cache.FileListingCache;
+import com.strac.files.models.DriveSyncState;
+import com.strac.files.models.FileMetadata;
+import com.strac.files.models.User;
+import com.strac.files.models.dto.FileSnapshot;
+import com.strac.files.models.repositories.DriveSyncStateRepository;
+import com.strac.files.models.repositories.FileRepository;
+import com.strac.files.models.repositories.UserRepository;
+import com.strac.files.services.DriveService;
+import com.strac.files.services.DriveSyncService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * Keeps the file_metadata table in line with the user's Google Drive.
+ * The first sync lists everything and remembers a start page token; every sync after that
+ * only replays the Drive Changes API from that token, so unchanged files cost nothing.
+ * Both paths merge into the existing rows instead of rewriting them: new and changed files are
+ * upserted in batches and only the files that are gone from Drive are deleted.
+ */
+@Slf4j
+@Service
+public class DriveSyncServiceImpl implements DriveSyncService {
+
+    private static final int DRIVE_PAGE_SIZE = 1000;
+
+    private static final int DELETE_CHUNK_SIZE = 1000;
+
+    private static final String FILE_FIELDS = "id, name, mimeType, modifiedTime, size, md5Checksum, version, ownedByMe";
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private DriveSyncStateRepository syncStateRepository;
+
+    @Autowired
+    private DriveService driveService;
+
+    @Autowired
+    private FileListingCache listingCache;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier("driveSyncExecutor")
+    private TaskExecutor syncExecutor;
+
+    @Value("${files.sync.soft.ttl.sec}")
+    private long softTtlSec;
+
+    @Value("${files.sync.hard.ttl.sec}")
+    private long hardTtlSec;
+
+    @Value("${files.sync.stale.while.revalidate}")
+    private boolean staleWhileRevalidate;
+
+    private final ConcurrentMap<String, CompletableFuture<Void>> inFlightSyncs = new ConcurrentHashMap<>();
+
+    // A listing synced within the soft TTL is fresh. Past the soft TTL it is still served, and in
+    // stale-while-revalidate mode a sync is queued in the background instead of making the caller wait.
+    // Past the hard TTL (or if the user was never synced) the caller has to wait for the sync.
+    // The check reads a single column of the user's sync state, whatever the number of files.
+    public void syncIfStale(String userId) throws IOException {
+        LocalDateTime lastSyncedAt = syncStateRepository.findLastSyncedAtByUserId(userId).orElse(null);
+        LocalDateTime now = LocalDateTime.now();
+
+        if (lastSyncedAt == null || lastSyncedAt.isBefore(now.minusSeconds(hardTtlSec))) {
+            syncFiles(userId);
+        } else if (lastSyncedAt.isBefore(now.minusSeconds(softTtlSec))) {
+            if (staleWhileRevalidate) {
+                syncInBackground(userId);
+            } else {
+                syncFiles(userId);
+            }
+        }
+    }
+
+    // True when the user's files were synced within the soft TTL, so a single stored file can be
+    // trusted to match Drive without asking Drive again
+    public boolean isFresh(String userId) {
+        return syncStateRepository.findLastSyncedAtByUserId(userId)
+                .map(lastSyncedAt -> !lastSyncedAt.isBefore(LocalDateTime.now().minusSeconds(softTtlSec)))
+                .orElse(false);
+    }
+
+    // The sync is registered as soon as it is queued, so a burst of requests for the same stale user
+    // queues a single task instead of one per request
+    private void syncInBackground(String userId) {
+        CompletableFuture<Void> sync = new CompletableFuture<>();
+        if (inFlightSyncs.putIfAbsent(userId, sync) != null) {
+            return;
+        }
+
+        try {
+            syncExecutor.execute(() -> {
+                try {
+                    runSync(userId, sync);
+                } catch (Exception e) {
+                    log.error("Background sync failed for user {}: {}", userId, e.getMessage(), e);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            // The queue is full, the next request for this user will try again.
+            // Callers already waiting on the sync get the rejection.
+            log.warn("Background sync queue is full, skipping sync for user {}", userId);
+            inFlightSyncs.remove(userId, sync);
+            sync.completeExceptionally(e);
+        }
+    }
+
+    // Only one sync per user runs or is queued at a time. Callers that arrive meanwhile wait for it
+    // and share its outcome instead of calling Drive and writing the same rows again.
+    public void syncFiles(String userId) throws IOException {
+        CompletableFuture<Void> sync = new CompletableFuture<>();
+        CompletableFuture<Void> runningSync = inFlightSyncs.putIfAbsent(userId, sync);
+        if (runningSync != null) {
+            awaitSync(runningSync);
+            return;
+        }
+        runSync(userId, sync);
+    }
+
+    // Run the sync registered as the user's in-flight sync, then complete and unregister it
+    private void runSync(String userId, CompletableFuture<Void> sync) throws IOException {
+        try {
+            syncInNewTransaction(userId);
+            sync.complete(null);
+        } catch (IOException | RuntimeException e) {
+            sync.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightSyncs.remove(userId, sync);
+        }
+    }
+
+    // The sync commits before waiting callers are released, so they read the synced rows
+    private void syncInNewTransaction(String userId) throws IOException {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try {
+                    doSync(userId);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void awaitSync(CompletableFuture<Void> runningSync) throws IOException {
+        try {
+            runningSync.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    private void doSync(String userId) throws IOException {
+        Drive drive = driveService.getDriveService(userId);
+        DriveSyncState state = syncStateRepository.findByUser_OauthId(userId).orElse(null);
+
+        if (state == null || state.getStartPageToken() == null) {
+            fullSync(drive, userId, state);
+            return;
+        }
+
+        try {
+            applyChanges(drive, userId, state);
+        } catch (GoogleJsonResponseException e) {
+            // Drive rejects page tokens that are too old, so start over from a full listing
+            if (!isInvalidPageToken(e)) {
+                throw e;
+            }
+            log.warn("Start page token for user {} is no longer valid, doing a full sync", userId);
+            fullSync(drive, userId, state);
+        }
+    }
+
+    // List every file once and remember where the change log starts
+    private void fullSync(Drive drive, String userId, DriveSyncState state) throws IOException {
+        // Take the token before listing so that nothing changed during the listing is missed
+        String startPageToken = drive.changes().getStartPageToken().execute().getStartPageToken();
+
+        User user = userRepository.findByOauthId(userId);
+        Map<String, FileSnapshot> storedFiles = fileRepository.findSnapshotsByUser_OauthId(userId).stream()
+                .collect(Collectors.toMap(FileSnapshot::getDriveFileId, Function.identity(), (a, b) -> a));
+        Set<String> vanishedFileIds = new HashSet<>(storedFiles.keySet());
+        boolean hasChanges = false;
+
+        // Walk every page of the listing, Drive never returns more than DRIVE_PAGE_SIZE files at once
+        String pageToken = null;
+        do {
+            FileList result = drive.files().list()
+                    .setQ("'me' in owners")
+                    .setPageSize(DRIVE_PAGE_SIZE)
+                    .setPageToken(pageToken)
+                    .setFields("nextPageToken, files(" + FILE_FIELDS + ")")
+                    .execute();
+
+            // Only write the files that are new or differ from the stored row
+            List<FileMetadata> changedFiles = new ArrayList<>();
+            for (File file : result.getFiles()) {
+                vanishedFileIds.remove(file.getId());
+                FileSnapshot stored = storedFiles.get(file.getId());
+                if (stored == null || !stored.matches(file)) {
+                    changedFiles.add(FileMetadata.fromDriveFile(file, user));
+                }
+            }
+            if (!changedFiles.isEmpty()) {
+                fileRepository.upsertAll(user.getId(), changedFiles);
+                hasChanges = true;
+            }
+
+            pageToken = result.getNextPageToken();
+        } while (pageToken != null);
+
+        deleteFiles(user, vanishedFileIds);
+        hasChanges |= !vanishedFileIds.isEmpty();
+
+        saveSyncState(state, user, startPageToken);
+        if (hasChanges) {
+            listingCache.invalidate(userId);
+        }
+    }
+
+    // Replay only the changes Drive recorded since the stored start page token
+    private void applyChanges(Drive drive, String userId, DriveSyncState state) throws IOException {
+        User user = state.getUser();
+        String pageToken = state.getStartPageToken();
+        String newStartPageToken = null;
+        boolean hasChanges = false;
+
+        while (pageToken != null) {
+            ChangeList changes = drive.changes().list(pageToken)
+                    .setPageSize(DRIVE_PAGE_SIZE)
+                    .setFields("nextPageToken, newStartPageToken, changes(fileId, removed, file(" + FILE_FIELDS + "))")
+                    .execute();
+
+            List<FileMetadata> changedFiles = new ArrayList<>();
+            Set<String> removedFileIds = new HashSet<>();
+            for (Change change : changes.getChanges()) {
+                File file = change.getFile();
+                boolean isRemoved = Boolean.TRUE.equals(change.getRemoved()) || file == null ||
+                        !Boolean.TRUE.equals(file.getOwnedByMe());
+
+                if (isRemoved) {
+                    removedFileIds.add(change.getFileId());
+                } else {
+                    changedFiles.add(FileMetadata.fromDriveFile(file, user));
+                }
+            }
+            if (!changedFiles.isEmpty()) {
+                fileRepository.upsertAll(user.getId(), changedFiles);
+            }
+            deleteFiles(user, removedFileIds);
+            hasChanges |= !changes.getChanges().isEmpty();
+
+            pageToken = changes.getNextPageToken();
+            newStartPageToken = changes.getNewStartPageToken();
+        }
+
+        saveSyncState(state, user, newStartPageToken);
+        if (hasChanges) {
+            listingCache.invalidate(userId);
+        }
+    }
+
+    // Delete in chunks so the IN list stays a reasonable size
+    private void deleteFiles(User user, Set<String> driveFileIds) {
+        List<String> ids = new ArrayList<>(driveFileIds);
+        for (int i = 0; i < ids.size(); i += DELETE_CHUNK_SIZE) {
+            fileRepository.deleteAllByUserIdAndDriveFileIdIn(user.getId(),
+                    ids.subList(i, Math.min(i + DELETE_CHUNK_SIZE, ids.size())));
+        }
+    }
+
+    private void saveSyncState(DriveSyncState state, User user, String startPageToken) {
+        if (state == null) {
+            state = new DriveSyncState();
+            state.setUser(user);
+        }
+        state.setStartPageToken(startPageToken);
+        state.setLastSyncedAt(LocalDateTime.now());
+        state.setUpdatedAt(LocalDateTime.now());
+        syncStateRepository.save(state);
+    }
+
+    private static boolean isInvalidPageToken(GoogleJsonResponseException e) {
+        int status = e.getStatusCode();
+        return status == 400 || status == 404 || status == 410;
+    }
+}
@@ -1,30 +1,108 @@
 package com.strac.files.services.impl;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.media.MediaHttpUploader;
 import com.google.api.client.http.HttpResponseException;
 import com.google.api.client.http.InputStreamContent;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.model.File;
-import com.google.api.services.drive.model.FileList;
+import com.strac.files.cache.ExportCache;
+import com.strac.files.cache.FileContentCache;
+import com.strac.files.cache.FileListingCache;
+import com.strac.files.cache.UploadJob;
+import com.strac.files.cache.UploadJobRegistry;
+import com.strac.files.exceptions.BadRequestException;
+import com.strac.files.exceptions.RecordNotFoundException;
 import com.strac.files.models.FileMetadata;
 import com.strac.files.models.User;
+import com.strac.files.models.dto.DeleteResultDTO;
+import com.strac.files.models.dto.FileListingRow;
 import com.strac.files.models.dto.FileMetadataDTO;
+import com.strac.files.models.dto.FilePageDTO;
+import com.strac.files.models.dto.FileQuery;
+import com.strac.files.models.dto.FileSort;
+import com.strac.files.models.dto.UploadJobDTO;
+import com.strac.files.models.dto.UploadResultDTO;
 import com.strac.files.models.repositories.FileRepository;
 import com.strac.files.models.repositories.UserRepository;
 import com.strac.files.services.DriveService;
+import com.strac.files.services.DriveSyncService;
 import com.strac.files.services.FileService;
+import com.strac.files.utils.ChecksumInputStream;
+import com.strac.files.utils.CursorUtil;
+import com.strac.files.utils.LazyInputStream;
+import com.strac.files.utils.ParallelRangeInputStream;
+import com.strac.files.utils.ReadAheadInputStream;
+import com.strac.files.utils.TransferBudget;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.fileupload2.core.DiskFileItem;
+import org.apache.commons.fileupload2.core.DiskFileItemFactory;
+import org.apache.commons.fileupload2.core.FileItemInput;
+import org.apache.commons.fileupload2.core.FileItemInputIterator;
+import org.apache.commons.fileupload2.jakarta.servlet6.JakartaServletFileUpload;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.WebAsyncTask;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.time.LocalDateTime;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.LongConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 /**
  * @author Charles on 22/12/2024
@@ -35,6 +113,57 @@ import java.util.stream.Collectors;
 @Transactional
 public class FileServiceImpl implements FileService {
 
+    private static final int READ_AHEAD_BLOCK_SIZE = 256 * 1024;
+
+    private static final LongConsumer IGNORE_PROGRESS = bytesUploaded -> { };
+
+    // Drive takes at most this many calls in one batch request
+    private static final int DRIVE_BATCH_SIZE = 100;
+
+    private static final String GOOGLE_APPS_MIME_PREFIX = "application/vnd.google-apps.";
+
+    // Drive refuses to export more than this
+    private static final long MAX_EXPORT_BYTES = DataSize.ofMegabytes(10).toBytes();
+
+    // File extensions of the formats Drive exports to, for the name of the exported file
+    private static final Map<String, String> EXPORT_EXTENSIONS = Map.ofEntries(
+            Map.entry("application/pdf", ".pdf"),
+            Map.entry("application/vnd.openxmlformats-officedocument.wordprocessingml.document", ".docx"),
+            Map.entry("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", ".xlsx"),
+            Map.entry("application/vnd.openxmlformats-officedocument.presentationml.presentation", ".pptx"),
+            Map.entry("application/vnd.oasis.opendocument.text", ".odt"),
+            Map.entry("application/vnd.oasis.opendocument.spreadsheet", ".ods"),
+            Map.entry("application/vnd.oasis.opendocument.presentation", ".odp"),
+            Map.entry("application/rtf", ".rtf"),
+            Map.entry("application/epub+zip", ".epub"),
+            Map.entry("application/zip", ".zip"),
+            Map.entry("text/plain", ".txt"),
+            Map.entry("text/csv", ".csv"),
+            Map.entry("text/tab-separated-values", ".tsv"),
+            Map.entry("text/html", ".html"),
+            Map.entry("text/markdown", ".md"),
+            Map.entry("image/png", ".png"),
+            Map.entry("image/jpeg", ".jpg"),
+            Map.entry("image/svg+xml", ".svg"));
+
+    @Value("${files.listing.page.size}")
+    private int defaultPageSize;
+
+    @Value("${files.listing.page.size.max}")
+    private int maxPageSize;
+
+    @Value("${files.upload.chunk.size.mb}")
+    private int uploadChunkSizeMb;
+
+    @Value("${files.upload.read.ahead.mb}")
+    private int uploadReadAheadMb;
+
+    @Value("${spring.servlet.multipart.max-file-size}")
+    private DataSize maxFileSize;
+
+    @Value("${spring.servlet.multipart.max-request-size}")
+    private DataSize maxRequestSize;
+
     @Autowired
     private UserRepository userRepository;
     
@@ -44,99 +173,974 @@ public class FileServiceImpl implements FileService {
     @Autowired
     private DriveService driveService;
 
-    // List all files by user ID
-    @Transactional
-    public List<FileMetadataDTO> listAllFilesByUserId(String userId) throws IOException {
-        List<FileMetadata> cachedFiles = fileRepository.findAllByUser_OauthId(userId);
+    @Autowired
+    private DriveSyncService driveSyncService;
 
-        // If a file has been updated with the last 15 mins (set to secs for demo purpose),
-        // we can assume that the DB cache is up to date and ignore going to the drive
-        boolean shouldFetchFromDrive = cachedFiles.isEmpty() ||
-                cachedFiles.stream().anyMatch(file -> file.getUpdatedAt() == null ||
-                        file.getUpdatedAt().isBefore(LocalDateTime.now().minusSeconds(15)));
+    @Autowired
+    private FileListingCache listingCache;
 
-        if (shouldFetchFromDrive) {
-            // Clear old cache
-            fileRepository.deleteAllByUser_OauthId(userId);
+    @Autowired
+    private PlatformTransactionManager transactionManager;
 
-            // Fetch fresh data from Google Drive
-            Drive drive = driveService.getDriveService(userId);
-            FileList result = drive.files().list()
-                    .setQ("'me' in owners")
-                    .setFields("files(id, name, mimeType, modifiedTime)")
-                    .execute();
+    @Autowired
+    private ObjectMapper objectMapper;
 
-            User user = userRepository.findByOauthId(userId);
-            cachedFiles = result.getFiles().stream().map(file -> {
-                return getFileMetadata(file, user);
-            }).collect(Collectors.toList());
+    @Autowired
+    @Qualifier("uploadReadAheadExecutor")
+    private TaskExecutor uploadReadAheadExecutor;
+
+    @Autowired
+    @Qualifier("driveUploadExecutor")
+    private TaskExecutor driveUploadExecutor;
+
+    @Value("${files.upload.batch.concurrency.per.user}")
+    private int batchConcurrencyPerUser;
+
+    private final ConcurrentMap<String, Semaphore> userUploadPermits = new ConcurrentHashMap<>();
+
+    @Autowired
+    @Qualifier("uploadJobExecutor")
+    private TaskExecutor uploadJobExecutor;
 
-            // update file records in the DB
-            fileRepository.saveAll(cachedFiles);
+    @Autowired
+    private UploadJobRegistry uploadJobRegistry;
+
+    @Autowired
+    private TransferBudget transferBudget;
+
+    @Autowired
+    private FileContentCache contentCache;
+
+    @Autowired
+    private ExportCache exportCache;
+
+    @Autowired
+    @Qualifier("downloadStreamingExecutor")
+    private AsyncTaskExecutor downloadStreamingExecutor;
+
+    @Value("${files.streaming.timeout.sec}")
+    private long downloadTimeoutSec;
+
+    @Autowired
+    @Qualifier("driveDownloadExecutor")
+    private TaskExecutor driveDownloadExecutor;
+
+    @Value("${files.download.zip.max.files}")
+    private int zipMaxFiles;
+
+    @Value("${files.download.zip.parallel.fetches}")
+    private int zipParallelFetches;
+
+    @Value("${files.download.zip.buffer.mb}")
+    private int zipBufferMb;
+
+    @Value("${files.download.parallel.threshold.mb}")
+    private long parallelDownloadThresholdMb;
+
+    @Value("${files.download.parallel.part.mb}")
+    private long parallelDownloadPartMb;
+
+    @Value("${files.download.parallel.fetches}")
+    private int parallelDownloadFetches;
+
+    @Value("${files.delete.batch.max.files}")
+    private int deleteMaxFiles;
+
+    @Value("${files.upload.jobs.spool.dir}")
+    private String uploadSpoolDir;
+
+    // List one page of the user's files that match the query, in the requested sort order.
+    // No transaction here: the sync commits on its own and the page is read in a short read-only transaction,
+    // so a request waiting on another request's sync does not hold a DB connection meanwhile.
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public FilePageDTO listFilesByUserId(String userId, FileQuery query, String cursor, Integer pageSize)
+            throws IOException {
+        // Bring the DB cache up to date with any changes made in the drive
+        driveSyncService.syncIfStale(userId);
+
+        int limit = resolvePageSize(pageSize);
+        FileSort sort = FileSort.fromParam(query.getSort());
+        return listingCache.get(new FileListingCache.ListingKey(userId, query, cursor, limit),
+                () -> loadPage(userId, query, sort, cursor, limit));
+    }
+
+    // Stream every file of the user as newline-delimited JSON. Rows are read from a DB cursor and
+    // written out one by one, so memory use does not grow with the size of the drive.
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public StreamingResponseBody streamFilesByUserId(String userId) throws IOException {
+        driveSyncService.syncIfStale(userId);
+
+        return outputStream -> {
+            try {
+                readOnlyTransaction().executeWithoutResult(status -> {
+                    try (Stream<FileMetadataDTO> files = fileRepository.streamAllByUser_OauthId(userId)) {
+                        writeNdjson(files, outputStream);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+    }
+
+    // Upload a file with Drive's resumable protocol, one chunk at a time.
+    // When the client sends the MD5 of the content and the user already has a file with that content,
+    // the existing file is returned and nothing is sent to Drive.
+    // No transaction here, the upload can take minutes and the DB is only needed before and after it.
+    // The request was admitted against the transfer budget before its body was received (UploadAdmissionInterceptor).
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public FileMetadataDTO uploadFile(MultipartFile file, String userId, String contentMd5) throws IOException {
+        if (contentMd5 != null) {
+            FileMetadata existing = fileRepository.findFirstByUser_OauthIdAndMd5ChecksumAndSize(
+                    userId, normalizeMd5(contentMd5), file.getSize());
+            if (existing != null) {
+                log.debug("Skipping upload of {}, same content as {}", file.getOriginalFilename(),
+                        existing.getDriveFileId());
+                return FileMetadataDTO.fromEntity(existing);
+            }
         }
 
-        return cachedFiles.stream()
-                .map(FileMetadataDTO::fromEntity)
-                .collect(Collectors.toList());
+        return uploadToDrive(userId, file.getOriginalFilename(), file.getContentType(), file.getInputStream(),
+                file.getSize(), IGNORE_PROGRESS);
     }
 
-    // Upload a file
-    public FileMetadataDTO uploadFile(MultipartFile file, String userId) throws IOException {
-        File fileData = new File();
-        fileData.setName(file.getOriginalFilename());
+    // Accept an upload as a background job. The received file is moved into the spool directory and queued
+    // on the upload job pool, so the request returns as soon as the body is in, whatever the size of the file.
+    // Progress is polled with getUploadJob, and the file_metadata row is written when the job completes.
+    // The permit is the request's share of the transfer budget. The job takes it over and holds it until it
+    // finishes, since the spooled file stays on disk till then.
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public UploadJobDTO submitUploadJob(MultipartFile file, String userId, TransferBudget.Permit permit)
+            throws IOException {
+        Path spoolFile = Files.createTempFile(Files.createDirectories(Path.of(uploadSpoolDir)), "upload-", ".part");
+
+        UploadJob job = null;
+        try {
+            // Moves the part Tomcat already wrote to disk rather than copying it, where the file system allows
+            file.transferTo(spoolFile.toFile());
+            job = uploadJobRegistry.create(userId, file.getOriginalFilename(), file.getContentType(), file.getSize());
+            UploadJob queuedJob = job;
+            TransferBudget.Permit jobPermit = permit.transfer();
+            try {
+                uploadJobExecutor.execute(() -> runUploadJob(queuedJob, spoolFile, jobPermit));
+            } catch (RuntimeException e) {
+                jobPermit.close();
+                throw e;
+            }
+        } catch (IOException | RuntimeException e) {
+            if (job != null) {
+                uploadJobRegistry.remove(job);
+            }
+            Files.deleteIfExists(spoolFile);
+            throw e;
+        }
+        return job.toDto();
+    }
+
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public UploadJobDTO getUploadJob(String userId, String jobId) {
+        return uploadJobRegistry.find(userId, jobId)
+                .map(UploadJob::toDto)
+                .orElseThrow(() -> new RecordNotFoundException("Upload job not found"));
+    }
+
+    // Pre-flight check for an upload: the user's file with this content, if there is one
+    public FileMetadataDTO findFileByContent(String userId, String md5Checksum, long size) {
+        FileMetadata existing = fileRepository.findFirstByUser_OauthIdAndMd5ChecksumAndSize(
+                userId, normalizeMd5(md5Checksum), size);
+        if (existing == null) {
+            throw new RecordNotFoundException("No file with this content");
+        }
+        return FileMetadataDTO.fromEntity(existing);
+    }
+
+    // Upload every file part of a multipart request while the client is still sending it.
+    // Parts are read straight from the request body and passed on to Drive chunk by chunk, so nothing
+    // is spooled to disk. No transaction here, a DB connection is only needed once a file is in Drive.
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public List<FileMetadataDTO> streamUpload(HttpServletRequest request, String userId) throws IOException {
+        if (!JakartaServletFileUpload.isMultipartContent(request)) {
+            throw new BadRequestException("Expected a multipart/form-data request");
+        }
+
+        JakartaServletFileUpload<DiskFileItem, DiskFileItemFactory> upload = new JakartaServletFileUpload<>();
+        upload.setFileSizeMax(maxFileSize.toBytes());
+        upload.setSizeMax(maxRequestSize.toBytes());
+
+        // Nothing has been read yet, so a request turned away here costs no more than its headers.
+        // Parts go through one at a time, so the request only ever holds a read-ahead buffer and the chunk
+        // the Drive client is sending, whatever the size of the body.
+        long bufferedBytes = DataSize.ofMegabytes(uploadReadAheadMb + uploadChunkSizeMb).toBytes();
+        List<FileMetadataDTO> uploadedFiles = new ArrayList<>();
+        try (TransferBudget.Permit permit = transferBudget.acquire(bufferedBytes, TransferBudget.Direction.UPLOAD)) {
+            FileItemInputIterator parts = upload.getItemIterator(request);
+            while (parts.hasNext()) {
+                FileItemInput part = parts.next();
+                if (part.isFormField()) {
+                    continue;
+                }
+                try (InputStream content = readAhead(part.getInputStream())) {
+                    uploadedFiles.add(uploadToDrive(userId, part.getName(), part.getContentType(), content, -1,
+                            IGNORE_PROGRESS));
+                }
+            }
+        }
+
+        if (uploadedFiles.isEmpty()) {
+            throw new BadRequestException("No file found in the request");
+        }
+        return uploadedFiles;
+    }
+
+    // Upload many files in one request. Up to batchConcurrencyPerUser files of the same user are sent to Drive
+    // in parallel, then every uploaded file is written to file_metadata in one batched upsert.
+    // Each file gets its own result, a failed file does not fail the others.
+    // The whole batch was charged to the transfer budget before its body was received.
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public List<UploadResultDTO> uploadFiles(List<MultipartFile> files, String userId) throws IOException {
+        if (files == null || files.isEmpty()) {
+            throw new BadRequestException("No file found in the request");
+        }
 
-        InputStream inputStream = file.getInputStream();
         Drive drive = driveService.getDriveService(userId);
-        File uploadedFile = drive.files()
-                .create(fileData, new InputStreamContent(file.getContentType(), inputStream))
-                .setFields("id, name, mimeType")
-                .execute();
+        Semaphore permits = userUploadPermits(userId);
+        List<CompletableFuture<File>> uploads = new ArrayList<>();
+        try {
+            for (MultipartFile file : files) {
+                // Waiting here rather than in the pool keeps one user's batch from tying up every upload thread
+                permits.acquire();
+                try {
+                    uploads.add(CompletableFuture.supplyAsync(() -> uploadBatchFile(drive, file), driveUploadExecutor)
+                            .whenComplete((uploadedFile, error) -> permits.release()));
+                } catch (RuntimeException e) {
+                    permits.release();
+                    throw e;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to upload");
+        }
 
         User user = userRepository.findByOauthId(userId);
-        FileMetadata fileEntity = getFileMetadata(uploadedFile, user);
-        fileRepository.save(fileEntity);
+        List<UploadResultDTO> results = new ArrayList<>();
+        List<FileMetadata> uploadedFiles = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            String fileName = files.get(i).getOriginalFilename();
+            try {
+                FileMetadata fileEntity = FileMetadata.fromDriveFile(uploads.get(i).join(), user);
+                uploadedFiles.add(fileEntity);
+                results.add(UploadResultDTO.success(fileName, FileMetadataDTO.fromEntity(fileEntity)));
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+                log.error("Batch upload of {} failed: {}", fileName, cause.getMessage(), cause);
+                results.add(UploadResultDTO.failure(fileName, "Upload failed: " + cause.getMessage()));
+            }
+        }
 
-        return FileMetadataDTO.fromEntity(fileEntity);
+        if (!uploadedFiles.isEmpty()) {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                    fileRepository.upsertAll(user.getId(), uploadedFiles));
+            listingCache.invalidate(userId);
+        }
+        return results;
+    }
+
+    // Download file content from Google Drive. A single byte range in a Range header is passed on to Drive
+    // and answered with 206 Partial Content, so seeking and resumed downloads only move the bytes asked for.
+    // Responses carry an ETag and Last-Modified, and a client that already has the current content gets a
+    // 304 Not Modified. While the user's stored files are fresh, the metadata comes from file_metadata, so
+    // a 304 is answered without calling Drive at all. With the content cache on, a file downloaded before is
+    // sent from local disk outside the transfer budget: sendfile holds no heap, the fallback a small copy buffer.
+    // Large files are fetched from Drive in parts over several connections at once (see downloadInParts).
+    // Everything up to the headers happens on the request thread; the bytes are then sent by the returned task
+    // on downloadStreamingExecutor, so the Tomcat worker is free while they move. Returns null when the
+    // response is already complete (304, 416, or a cached file handed to sendfile).
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public WebAsyncTask<Void> downloadFile(String fileId, String userId, HttpServletRequest request,
+                                           HttpServletResponse response) throws IOException {
+
+        DownloadTarget target = null;
+        if (driveSyncService.isFresh(userId)) {
+            FileMetadata stored = fileRepository.findByUser_OauthIdAndDriveFileId(userId, fileId);
+            if (stored != null && stored.getSize() != null) {
+                target = DownloadTarget.fromMetadata(stored);
+            }
+        }
+
+        Drive metadataDrive = null;
+        try {
+            if (target == null) {
+                metadataDrive = driveService.getDriveService(userId);
+                target = DownloadTarget.fromDriveFile(metadataDrive.files().get(fileId)
+                        .setFields("name, mimeType, size, modifiedTime, md5Checksum, version").execute());
+            }
+        } catch (HttpResponseException e) {
+            throw new IOException("Error downloading file");
+        }
+        if (isGoogleWorkspaceFile(target.mimeType())) {
+            throw new BadRequestException("Google Workspace files have no content to download, "
+                    + "export them with /export/" + fileId + "?mimeType=<format> instead");
+        }
+        if (new ServletWebRequest(request, response).checkNotModified(target.eTag(), target.lastModified())) {
+            return null;
+        }
+
+        // Files with no size cannot be downloaded in ranges
+        Long size = target.size();
+        HttpRange range = size == null ? null : requestedRange(request, target);
+        long start = range == null ? 0 : range.getRangeStart(size);
+        long end = range == null ? (size == null ? -1 : size - 1) : range.getRangeEnd(size);
+        if (range != null && start >= size) {
+            response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+            return null;
+        }
+
+        FileContentCache.CachedContent cached = size == null ? null : contentCache.find(fileId, target.version());
+        if (cached != null && cached.getSize() != size) {
+            cached.close();
+            cached = null;
+        }
+        if (cached != null) {
+            FileContentCache.CachedContent content = cached;
+            try {
+                writeDownloadHeaders(response, target, range, start, end);
+                if (content.handOff(start, end, request)) {
+                    content.close();
+                    return null;
+                }
+                return streamDownload(content, () -> content.transferTo(start, end, response.getOutputStream()));
+            } catch (RuntimeException e) {
+                content.close();
+                throw e;
+            }
+        }
+
+        // The content streams through, so only the buffers it passes through are charged: the parts fetched
+        // ahead for a download in parts, one read-ahead block otherwise
+        boolean inParts = size != null && parallelDownloadFetches > 1
+                && end - start + 1 >= DataSize.ofMegabytes(parallelDownloadThresholdMb).toBytes();
+        long bufferedBytes = inParts ? Math.min(end - start + 1,
+                DataSize.ofMegabytes(parallelDownloadPartMb).toBytes() * parallelDownloadFetches)
+                : READ_AHEAD_BLOCK_SIZE;
+        // The Drive client is resolved before the budget is taken, since refreshing the token can fail.
+        // Until the task owns the permit, a failure has to give it back here.
+        Drive drive = metadataDrive == null ? driveService.getDriveService(userId) : metadataDrive;
+        Long version = target.version();
+        TransferBudget.Permit permit = transferBudget.acquire(bufferedBytes, TransferBudget.Direction.DOWNLOAD);
+        try {
+            writeDownloadHeaders(response, target, range, start, end);
+            return streamDownload(permit, () -> {
+                // Only whole downloads fill the content cache
+                try (FileContentCache.Fill fill = range == null && size != null
+                        ? contentCache.startFill(fileId, version, size) : null) {
+                    OutputStream outputStream = response.getOutputStream();
+                    OutputStream destination = fill == null ? outputStream : fill.wrap(outputStream);
+                    if (inParts) {
+                        downloadInParts(drive, fileId, start, end, destination);
+                    } else {
+                        Drive.Files.Get media = drive.files().get(fileId);
+                        if (range != null) {
+                            media.getRequestHeaders().setRange("bytes=" + start + "-" + end);
+                        }
+                        media.executeMediaAndDownloadTo(destination);
+                    }
+                    outputStream.flush();
+                    if (fill != null) {
+                        fill.commit();
+                    }
+                } catch (HttpResponseException e) {
+                    throw new IOException("Error downloading file");
+                }
+            });
+        } catch (RuntimeException e) {
+            permit.close();
+            throw e;
+        }
     }
 
-    // Download file content from Google Drive
-    public void downloadFile(String fileId, String userId, HttpServletResponse response)
+    // Run a transfer on downloadStreamingExecutor. The resource it holds is closed once it is over,
+    // and also when the executor turned the transfer away and it never ran.
+    private WebAsyncTask<Void> streamDownload(AutoCloseable resource, Transfer transfer) {
+        WebAsyncTask<Void> task = new WebAsyncTask<>(downloadTimeoutSec * 1000, downloadStreamingExecutor, () -> {
+            try (resource) {
+                transfer.run();
+            }
+            return null;
+        });
+        task.onCompletion(() -> {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                log.warn("Could not release download: {}", e.getMessage());
+            }
+        });
+        return task;
+    }
+
+    @FunctionalInterface
+    private interface Transfer {
+        void run() throws IOException;
+    }
+
+    // Export a Google Workspace file (Docs, Sheets, Slides, ...) converted by Drive to the given MIME type.
+    // Conversions are cached by file version and format, so exporting an unchanged file again is answered
+    // from memory. The version comes from file_metadata while the user's files are fresh, in which case a
+    // cached export does not call Drive at all.
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public void exportFile(String fileId, String mimeType, String userId, HttpServletResponse response)
             throws IOException {
+        if (mimeType == null || mimeType.isBlank()) {
+            throw new BadRequestException("A mimeType to export to is required");
+        }
 
-        Drive drive = driveService.getDriveService(userId);
+        FileMetadata stored = driveSyncService.isFresh(userId)
+                ? fileRepository.findByUser_OauthIdAndDriveFileId(userId, fileId) : null;
+        String name;
+        String sourceMimeType;
+        Long version;
+        Drive drive = null;
         try {
-            File file = drive.files().get(fileId).execute();
-            String fileName = file.getName();
-            String mimeType = file.getMimeType();
+            if (stored != null && stored.getDriveVersion() != null) {
+                name = stored.getFileName();
+                sourceMimeType = stored.getMimeType();
+                version = stored.getDriveVersion();
+            } else {
+                drive = driveService.getDriveService(userId);
+                File file = drive.files().get(fileId).setFields("name, mimeType, version").execute();
+                name = file.getName();
+                sourceMimeType = file.getMimeType();
+                version = file.getVersion();
+            }
+            if (!isGoogleWorkspaceFile(sourceMimeType)) {
+                throw new BadRequestException("Only Google Workspace files can be exported, "
+                        + "download this file instead");
+            }
 
-            response.setContentType(mimeType);
-            response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+            Drive exportDrive = drive;
+            ExportCache.Exporter exporter = () -> exportFromDrive(
+                    exportDrive == null ? driveService.getDriveService(userId) : exportDrive, fileId, mimeType);
+            byte[] content = version == null ? exporter.export()
+                    : exportCache.get(new ExportCache.ExportKey(fileId, version, mimeType), exporter);
 
+            response.setContentType(mimeType);
+            response.setHeader("Content-Disposition", "attachment; filename=\""
+                    + name + EXPORT_EXTENSIONS.getOrDefault(mimeType, "") + "\"");
+            response.setContentLength(content.length);
             OutputStream outputStream = response.getOutputStream();
-            drive.files().get(fileId).executeMediaAndDownloadTo(outputStream);
+            outputStream.write(content);
             outputStream.flush();
         } catch (HttpResponseException e) {
-            throw new IOException("Error downloading file");
+            if (e.getStatusCode() == HttpServletResponse.SC_BAD_REQUEST) {
+                throw new BadRequestException("This file cannot be exported as " + mimeType);
+            }
+            throw new IOException("Error exporting file");
+        }
+    }
+
+    private byte[] exportFromDrive(Drive drive, String fileId, String mimeType) throws IOException {
+        try (TransferBudget.Permit permit = transferBudget.acquire(MAX_EXPORT_BYTES,
+                TransferBudget.Direction.DOWNLOAD)) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            drive.files().export(fileId, mimeType).executeMediaAndDownloadTo(content);
+            return content.toByteArray();
         }
     }
 
+    private static boolean isGoogleWorkspaceFile(String mimeType) {
+        return mimeType != null && mimeType.startsWith(GOOGLE_APPS_MIME_PREFIX);
+    }
+
+    // A single connection to Drive caps a download at that connection's throughput, so bytes start to end of a
+    // large file are fetched as parallelDownloadPartMb ranges, parallelDownloadFetches of them at once, and
+    // written in order. Parts that arrive early wait in memory, so at most that many parts are buffered.
+    private void downloadInParts(Drive drive, String fileId, long start, long end, OutputStream destination)
+            throws IOException {
+        ParallelRangeInputStream.RangeFetcher fetcher = (from, to) -> {
+            Drive.Files.Get part = drive.files().get(fileId);
+            part.getRequestHeaders().setRange("bytes=" + from + "-" + to);
+            return part.executeMediaAsInputStream();
+        };
+        try (InputStream content = new ParallelRangeInputStream(fetcher, start, end,
+                DataSize.ofMegabytes(parallelDownloadPartMb).toBytes(), parallelDownloadFetches,
+                driveDownloadExecutor)) {
+            content.transferTo(destination);
+        }
+    }
+
+    // Download several files as one ZIP archive, written to the response as it is built. Up to
+    // zipParallelFetches files are fetched from Drive at once ahead of the writer, each into a buffer of at most
+    // zipBufferMb, and the entries are written in the order the files were asked for. Memory stays the same
+    // whatever the size of the archive, and files that fit in their buffer take about as long as the slowest
+    // fetch instead of the sum of all of them. Files that cannot be downloaded are left out of the archive
+    // and listed in a download-errors.txt entry at the end.
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public StreamingResponseBody downloadZip(List<String> fileIds, String userId) throws IOException {
+        if (fileIds == null || fileIds.isEmpty()) {
+            throw new BadRequestException("No files to download");
+        }
+        if (fileIds.size() > zipMaxFiles) {
+            throw new BadRequestException("At most " + zipMaxFiles + " files can be downloaded at once");
+        }
+
+        // Names of stored files save a metadata request per file
+        Map<String, String> storedNames = new HashMap<>();
+        if (driveSyncService.isFresh(userId)) {
+            fileRepository.findByUser_OauthIdAndDriveFileIdIn(userId, fileIds)
+                    .forEach(file -> storedNames.put(file.getDriveFileId(), file.getFileName()));
+        }
+        Drive drive = driveService.getDriveService(userId);
+        int maxBlocks = Math.max(1, (int) (DataSize.ofMegabytes(zipBufferMb).toBytes() / READ_AHEAD_BLOCK_SIZE));
+
+        return outputStream -> {
+            try (TransferBudget.Permit permit = transferBudget.acquire(
+                    (long) zipParallelFetches * maxBlocks * READ_AHEAD_BLOCK_SIZE, TransferBudget.Direction.DOWNLOAD)) {
+                writeZip(drive, fileIds, storedNames, maxBlocks, outputStream);
+            }
+        };
+    }
+
+    private void writeZip(Drive drive, List<String> fileIds, Map<String, String> storedNames, int maxBlocks,
+                          OutputStream outputStream) throws IOException {
+        Deque<ZipSource> fetching = new ArrayDeque<>();
+        Set<String> entryNames = new HashSet<>();
+        List<String> errors = new ArrayList<>();
+        byte[] buffer = new byte[READ_AHEAD_BLOCK_SIZE];
+        int next = 0;
+        try {
+            ZipOutputStream zip = new ZipOutputStream(outputStream);
+            zip.setLevel(Deflater.BEST_SPEED);
+            while (next < fileIds.size() || !fetching.isEmpty()) {
+                while (next < fileIds.size() && fetching.size() < zipParallelFetches) {
+                    String fileId = fileIds.get(next++);
+                    fetching.add(new ZipSource(drive, fileId, storedNames.get(fileId))
+                            .readAhead(maxBlocks, driveDownloadExecutor));
+                }
+                try (ZipSource source = fetching.poll()) {
+                    writeZipEntry(zip, source, buffer, entryNames, errors);
+                }
+            }
+
+            if (!errors.isEmpty()) {
+                zip.putNextEntry(new ZipEntry(uniqueEntryName("download-errors.txt", entryNames)));
+                zip.write(String.join("\n", errors).getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+            zip.finish();
+            outputStream.flush();
+        } finally {
+            for (ZipSource source : fetching) {
+                try {
+                    source.close();
+                } catch (IOException e) {
+                    log.warn("Could not close download of {}: {}", source.fileId, e.getMessage());
+                }
+            }
+        }
+    }
+
+    // A file Drive refuses to send (not found, no access, or a Google Docs file with no content) is skipped.
+    // Any other failure ends the download, as part of the entry may already be written.
+    private static void writeZipEntry(ZipOutputStream zip, ZipSource source, byte[] buffer, Set<String> entryNames,
+                                      List<String> errors) throws IOException {
+        int read;
+        try {
+            read = source.content.read(buffer);
+        } catch (HttpResponseException e) {
+            log.warn("Leaving {} out of ZIP download: {}", source.fileId, e.getStatusCode());
+            errors.add(source.fileId + ": " + (e.getStatusCode() == HttpServletResponse.SC_NOT_FOUND
+                    ? "not found" : "could not be downloaded (" + e.getStatusCode() + ")"));
+            return;
+        }
+
+        zip.putNextEntry(new ZipEntry(uniqueEntryName(source.name, entryNames)));
+        while (read != -1) {
+            zip.write(buffer, 0, read);
+            read = source.content.read(buffer);
+        }
+        zip.closeEntry();
+    }
+
+    // Entry names cannot contain directories and have to be unique within the archive,
+    // so a second "report.pdf" becomes "report (1).pdf"
+    private static String uniqueEntryName(String fileName, Set<String> entryNames) {
+        String name = fileName == null || fileName.isBlank() ? "file"
+                : fileName.replace('/', '_').replace('\\', '_');
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        String unique = name;
+        for (int copy = 1; !entryNames.add(unique); copy++) {
+            unique = base + " (" + copy + ")" + extension;
+        }
+        return unique;
+    }
+
     // Delete a file by Drive File ID
     public void deleteFileByDriveFileId(String userId, String driveFileId) throws IOException {
         Drive drive = driveService.getDriveService(userId);
         drive.files().delete(driveFileId).execute();
-        FileMetadata fileEntity = fileRepository.findByDriveFileId(driveFileId);
+        FileMetadata fileEntity = fileRepository.findByUser_OauthIdAndDriveFileId(userId, driveFileId);
         if (fileEntity != null) {
             fileRepository.delete(fileEntity);
         }
+        listingCache.invalidate(userId);
+    }
+
+    // Delete several files, sending the Drive deletes in batch requests of up to 100 and removing the rows
+    // of the deleted files with one statement. A file that is already gone from Drive counts as deleted.
+    // No transaction here, so no DB connection is held while Drive works through the batches.
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public List<DeleteResultDTO> deleteFiles(List<String> fileIds, String userId) throws IOException {
+        if (fileIds == null || fileIds.isEmpty()) {
+            throw new BadRequestException("No files to delete");
+        }
+        if (fileIds.size() > deleteMaxFiles) {
+            throw new BadRequestException("At most " + deleteMaxFiles + " files can be deleted at once");
+        }
+
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(fileIds));
+        Map<String, DeleteResultDTO> results = new HashMap<>();
+        Drive drive = driveService.getDriveService(userId);
+        for (int i = 0; i < ids.size(); i += DRIVE_BATCH_SIZE) {
+            List<String> chunk = ids.subList(i, Math.min(i + DRIVE_BATCH_SIZE, ids.size()));
+            BatchRequest batch = drive.batch();
+            for (String driveFileId : chunk) {
+                drive.files().delete(driveFileId).queue(batch, deleteCallback(driveFileId, results));
+            }
+
+            String failure = "No response from Drive";
+            try {
+                batch.execute();
+            } catch (IOException e) {
+                log.error("Batch delete of {} files failed: {}", chunk.size(), e.getMessage(), e);
+                failure = "Delete failed: " + e.getMessage();
+            }
+            for (String driveFileId : chunk) {
+                results.putIfAbsent(driveFileId, DeleteResultDTO.failure(driveFileId, failure));
+            }
+        }
+
+        List<String> deletedIds = ids.stream().filter(id -> results.get(id).isDeleted()).toList();
+        if (!deletedIds.isEmpty()) {
+            User user = userRepository.findByOauthId(userId);
+            new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                    fileRepository.deleteAllByUserIdAndDriveFileIdIn(user.getId(), deletedIds));
+            listingCache.invalidate(userId);
+        }
+        return ids.stream().map(results::get).toList();
+    }
+
+    // Callbacks run on the thread executing the batch, once per queued delete
+    private static JsonBatchCallback<Void> deleteCallback(String driveFileId, Map<String, DeleteResultDTO> results) {
+        return new JsonBatchCallback<>() {
+            @Override
+            public void onSuccess(Void content, com.google.api.client.http.HttpHeaders headers) {
+                results.put(driveFileId, DeleteResultDTO.success(driveFileId));
+            }
+
+            @Override
+            public void onFailure(GoogleJsonError error, com.google.api.client.http.HttpHeaders headers) {
+                if (error.getCode() == HttpServletResponse.SC_NOT_FOUND) {
+                    results.put(driveFileId, DeleteResultDTO.success(driveFileId));
+                } else {
+                    log.error("Delete of {} failed: {} {}", driveFileId, error.getCode(), error.getMessage());
+                    results.put(driveFileId,
+                            DeleteResultDTO.failure(driveFileId, "Delete failed: " + error.getMessage()));
+                }
+            }
+        };
+    }
+
+    private void runUploadJob(UploadJob job, Path spoolFile, TransferBudget.Permit permit) {
+        job.start();
+        try (InputStream content = Files.newInputStream(spoolFile)) {
+            job.complete(uploadToDrive(job.getUserId(), job.getFileName(), job.getContentType(), content,
+                    job.getTotalBytes(), job::setBytesUploaded));
+        } catch (Exception e) {
+            log.error("Upload job {} for {} failed: {}", job.getJobId(), job.getFileName(), e.getMessage(), e);
+            job.fail("Upload failed: " + e.getMessage());
+        } finally {
+            permit.close();
+            uploadJobRegistry.finished(job);
+            try {
+                Files.deleteIfExists(spoolFile);
+            } catch (IOException e) {
+                log.warn("Could not delete spooled upload {}: {}", spoolFile, e.getMessage());
+            }
+        }
+    }
+
+    private FileMetadataDTO uploadToDrive(String userId, String fileName, String contentType, InputStream content,
+                                          long length, LongConsumer progress) throws IOException {
+        File uploadedFile = createInDrive(driveService.getDriveService(userId), fileName, contentType, content,
+                length, progress);
+
+        User user = userRepository.findByOauthId(userId);
+        FileMetadata fileEntity = FileMetadata.fromDriveFile(uploadedFile, user);
+        // Upsert, a sync running meanwhile may have stored the new file already
+        fileRepository.upsertAll(user.getId(), List.of(fileEntity));
+        listingCache.invalidate(userId);
+
+        return FileMetadataDTO.fromEntity(fileEntity);
+    }
+
+    // Pass a length of -1 when it is not known up front. The MD5 and size of the content are worked out
+    // as it is sent, so the stored checksum does not depend on Drive returning one.
+    private File createInDrive(Drive drive, String fileName, String contentType, InputStream content, long length,
+                               LongConsumer progress) throws IOException {
+        File fileData = new File();
+        fileData.setName(fileName);
+
+        ChecksumInputStream checksum = new ChecksumInputStream(content);
+        InputStreamContent mediaContent = new InputStreamContent(contentType, checksum);
+        mediaContent.setLength(length);
+
+        Drive.Files.Create create = drive.files()
+                .create(fileData, mediaContent)
+                .setFields("id, name, mimeType, modifiedTime, size, md5Checksum, version");
+        configureResumableUpload(create.getMediaHttpUploader(), fileName, progress);
+        File uploadedFile = create.execute();
+
+        if (uploadedFile.getMd5Checksum() != null && !uploadedFile.getMd5Checksum().equals(checksum.getMd5Checksum())) {
+            log.warn("Checksum of {} in Drive is {}, sent content had {}", uploadedFile.getId(),
+                    uploadedFile.getMd5Checksum(), checksum.getMd5Checksum());
+        }
+        return uploadedFile
+                .setMd5Checksum(checksum.getMd5Checksum())
+                .setSize(checksum.getSize());
+    }
+
+    private File uploadBatchFile(Drive drive, MultipartFile file) {
+        try {
+            return createInDrive(drive, file.getOriginalFilename(), file.getContentType(), file.getInputStream(),
+                    file.getSize(), IGNORE_PROGRESS);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Semaphore userUploadPermits(String userId) {
+        return userUploadPermits.computeIfAbsent(userId, id -> new Semaphore(batchConcurrencyPerUser, true));
+    }
+
+    private static void writeDownloadHeaders(HttpServletResponse response, DownloadTarget target, HttpRange range,
+                                             long start, long end) {
+        response.setContentType(target.mimeType());
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + target.name() + "\"");
+        if (target.size() != null) {
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+            response.setContentLengthLong(end - start + 1);
+        }
+        if (range != null) {
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + target.size());
+        }
+    }
+
+    // The one range to send, or null for the whole file. Several ranges, a malformed header and an
+    // If-Range the file no longer matches all get the whole file, as RFC 9110 allows.
+    private static HttpRange requestedRange(HttpServletRequest request, DownloadTarget target) {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader == null) {
+            return null;
+        }
+
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (ranges.size() != 1) {
+            return null;
+        }
+
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRangeMatches(ifRange, target)) {
+            return null;
+        }
+        return ranges.get(0);
+    }
+
+    // If-Range holds either the ETag the client has, which has to be the current one, or the Last-Modified
+    // date it has, which has to be exactly the file's modified time
+    private static boolean ifRangeMatches(String ifRange, DownloadTarget target) {
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(target.eTag());
+        }
+        if (target.lastModified() < 0) {
+            return false;
+        }
+        try {
+            long clientSeconds = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+            return clientSeconds == target.lastModified() / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    // One file of a ZIP download. Its name (unless already known) and content are fetched from Drive on the
+    // first read, which happens on the download executor when the file is read ahead of the archive writer.
+    private static class ZipSource implements Closeable {
+
+        private final Drive drive;
+
+        private final String fileId;
+
+        private volatile String name;
+
+        private LazyInputStream source;
+
+        private InputStream content;
+
+        ZipSource(Drive drive, String fileId, String name) {
+            this.drive = drive;
+            this.fileId = fileId;
+            this.name = name;
+        }
+
+        // When the executor has no room the file is not read ahead, and the writer fetches it when it gets to it
+        ZipSource readAhead(int maxBlocks, Executor executor) {
+            source = new LazyInputStream(this::open);
+            try {
+                content = new ReadAheadInputStream(source, READ_AHEAD_BLOCK_SIZE, maxBlocks, executor);
+            } catch (RejectedExecutionException e) {
+                content = source;
+            }
+            return this;
+        }
+
+        private InputStream open() throws IOException {
+            if (name == null) {
+                name = drive.files().get(fileId).setFields("name").execute().getName();
+            }
+            return drive.files().get(fileId).executeMediaAsInputStream();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                content.close();
+            } finally {
+                source.close();
+            }
+        }
+    }
+
+    // What a download needs to know about a file, read from file_metadata or from Drive. The ETag is the
+    // content's MD5 when Drive has one and Drive's version number otherwise. lastModified is -1 when unknown.
+    private record DownloadTarget(String name, String mimeType, Long size, Long version, String eTag,
+                                  long lastModified) {
+
+        static DownloadTarget fromMetadata(FileMetadata file) {
+            return new DownloadTarget(file.getFileName(), file.getMimeType(), file.getSize(), file.getDriveVersion(),
+                    entityTag(file.getMd5Checksum(), file.getDriveVersion()),
+                    file.getModifiedTime() == null ? -1
+                            : file.getModifiedTime().toInstant(ZoneOffset.UTC).toEpochMilli());
+        }
+
+        static DownloadTarget fromDriveFile(File file) {
+            return new DownloadTarget(file.getName(), file.getMimeType(), file.getSize(), file.getVersion(),
+                    entityTag(file.getMd5Checksum(), file.getVersion()),
+                    file.getModifiedTime() == null ? -1 : file.getModifiedTime().getValue());
+        }
+
+        private static String entityTag(String md5Checksum, Long version) {
+            if (md5Checksum != null) {
+                return "\"" + md5Checksum + "\"";
+            }
+            return version == null ? null : "\"v" + version + "\"";
+        }
+    }
+
+    private static String normalizeMd5(String md5Checksum) {
+        String normalized = md5Checksum.trim().toLowerCase(Locale.ROOT);
+        if (!normalized.matches("[0-9a-f]{32}")) {
+            throw new BadRequestException("MD5 checksum must be 32 hex characters");
+        }
+        return normalized;
+    }
+
+    // Keep receiving from the client while the previous chunk goes to Drive. If no reader thread
+    // is free the upload still works, it just reads from the client between chunks.
+    private InputStream readAhead(InputStream source) {
+        try {
+            return new ReadAheadInputStream(source, READ_AHEAD_BLOCK_SIZE,
+                    uploadReadAheadMb * 1024 * 1024 / READ_AHEAD_BLOCK_SIZE, uploadReadAheadExecutor);
+        } catch (RejectedExecutionException e) {
+            log.debug("No read-ahead thread available, reading the upload directly");
+            return source;
+        }
+    }
+
+    // Only one chunk is buffered at a time, and a failed chunk is retried by the Drive client
+    // without sending the bytes Drive already has again
+    private void configureResumableUpload(MediaHttpUploader uploader, String fileName, LongConsumer progress) {
+        uploader.setDirectUploadEnabled(false);
+        uploader.setChunkSize(uploadChunkSizeMb * 1024 * 1024);
+        uploader.setProgressListener(state -> {
+            if (state.getUploadState() == MediaHttpUploader.UploadState.MEDIA_IN_PROGRESS) {
+                log.debug("Uploading {}: {} bytes sent", fileName, state.getNumBytesUploaded());
+                progress.accept(state.getNumBytesUploaded());
+            } else if (state.getUploadState() == MediaHttpUploader.UploadState.MEDIA_COMPLETE) {
+                log.debug("Uploading {}: complete, {} bytes sent", fileName, state.getNumBytesUploaded());
+                progress.accept(state.getNumBytesUploaded());
+            }
+        });
+    }
+
+    private void writeNdjson(Stream<FileMetadataDTO> files, OutputStream outputStream) throws IOException {
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            // Jackson puts a space between root values by default, the lines are separated with '\n' only
+            generator.setRootValueSeparator(null);
+            Iterator<FileMetadataDTO> iterator = files.iterator();
+            while (iterator.hasNext()) {
+                writer.writeValue(generator, iterator.next());
+                generator.writeRaw('\n');
+            }
+        }
+    }
+
+    private FilePageDTO loadPage(String userId, FileQuery query, FileSort sort, String cursor, int limit) {
+        CursorUtil.Cursor after = cursor == null || cursor.isEmpty() ? null : CursorUtil.decode(cursor);
+
+        // Ask for one extra row to find out if there is a next page
+        List<FileListingRow> rows = readOnlyTransaction().execute(status ->
+                fileRepository.findPage(userId, query, sort, after, limit + 1));
+
+        String nextCursor = null;
+        if (rows.size() > limit) {
+            rows = rows.subList(0, limit);
+            FileListingRow last = rows.get(limit - 1);
+            nextCursor = CursorUtil.encode(sort.cursorKey(last), last.id());
+        }
+
+        List<FileMetadataDTO> page = rows.stream()
+                .map(FileListingRow::toDto)
+                .collect(Collectors.toList());
+        return new FilePageDTO(page, nextCursor);
+    }
+
+    private int resolvePageSize(Integer pageSize) {
+        if (pageSize == null) {
+            return defaultPageSize;
+        }
+        if (pageSize < 1) {
+            throw new BadRequestException("pageSize must be greater than 0");
+        }
+        return Math.min(pageSize, maxPageSize);
     }
 
-    private static FileMetadata getFileMetadata(File file, User user) {
-        FileMetadata entity = new FileMetadata();
-        entity.setDriveFileId(file.getId());
-        entity.setFileName(file.getName());
-        entity.setMimeType(file.getMimeType());
-        entity.setUpdatedAt(LocalDateTime.now());
-        entity.setUser(user);
-        return entity;
+    // Read-only transactions run with Hibernate flushing turned off and a read-only JDBC connection
+    private TransactionTemplate readOnlyTransaction() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        return transactionTemplate;
     }
 }
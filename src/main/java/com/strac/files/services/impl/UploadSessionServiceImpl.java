@@ -0,0 +1,245 @@
+package com.strac.files.services.impl;
+
+import com.google.api.client.http.ByteArrayContent;
+import com.google.api.client.http.EmptyContent;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.json.JsonHttpContent;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import com.strac.files.cache.FileListingCache;
+import com.strac.files.exceptions.BadRequestException;
+import com.strac.files.exceptions.RecordNotFoundException;
+import com.strac.files.models.FileMetadata;
+import com.strac.files.models.UploadSession;
+import com.strac.files.models.User;
+import com.strac.files.models.dto.UploadSessionDTO;
+import com.strac.files.models.dto.UploadSessionRequest;
+import com.strac.files.models.repositories.FileRepository;
+import com.strac.files.models.repositories.UploadSessionRepository;
+import com.strac.files.models.repositories.UserRepository;
+import com.strac.files.services.DriveService;
+import com.strac.files.services.UploadSessionService;
+import com.strac.files.utils.TransferBudget;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * Uploads that can be carried on across requests, restarts and nodes. This speaks Drive's resumable
+ * upload protocol directly because MediaHttpUploader keeps the session URI to itself: the URI and the
+ * offset Drive has confirmed go into upload_sessions after every chunk, and Drive is asked for the
+ * real offset whenever a session is looked up, so a node that died mid-chunk loses nothing it had confirmed.
+ * There is no transaction around the transfer, each session update commits on its own.
+ */
+@Slf4j
+@Service
+public class UploadSessionServiceImpl implements UploadSessionService {
+
+    private static final int RESUME_INCOMPLETE = 308;
+
+    private static final String UPLOAD_FIELDS = "id, name, mimeType, modifiedTime, size, md5Checksum, version";
+
+    private static final String DEFAULT_MIME_TYPE = "application/octet-stream";
+
+    @Value("${files.upload.chunk.size.mb}")
+    private int uploadChunkSizeMb;
+
+    @Autowired
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private DriveService driveService;
+
+    @Autowired
+    private FileListingCache listingCache;
+
+    @Autowired
+    private TransferBudget transferBudget;
+
+    // Open a resumable upload in Drive and remember its session URI
+    public UploadSessionDTO createSession(String userId, UploadSessionRequest request) throws IOException {
+        if (request.getFileName() == null || request.getFileName().isBlank()) {
+            throw new BadRequestException("fileName is required");
+        }
+        if (request.getSize() < 1) {
+            throw new BadRequestException("size must be greater than 0");
+        }
+        String mimeType = request.getMimeType() == null ? DEFAULT_MIME_TYPE : request.getMimeType();
+
+        Drive drive = driveService.getDriveService(userId);
+        GenericUrl url = new GenericUrl(drive.getRootUrl() + "upload/" + drive.getServicePath() + "files");
+        url.set("uploadType", "resumable");
+        url.set("fields", UPLOAD_FIELDS);
+        HttpRequest initiate = drive.getRequestFactory().buildPostRequest(url, new JsonHttpContent(
+                drive.getJsonFactory(), new File().setName(request.getFileName()).setMimeType(mimeType)));
+        initiate.getHeaders().set("X-Upload-Content-Type", mimeType);
+        initiate.getHeaders().set("X-Upload-Content-Length", String.valueOf(request.getSize()));
+
+        HttpResponse response = initiate.execute();
+        String sessionUri;
+        try {
+            sessionUri = response.getHeaders().getLocation();
+        } finally {
+            response.disconnect();
+        }
+        if (sessionUri == null) {
+            throw new IOException("Drive did not return an upload session");
+        }
+
+        UploadSession session = new UploadSession();
+        session.setUser(userRepository.findByOauthId(userId));
+        session.setSessionId(UUID.randomUUID().toString());
+        session.setDriveSessionUri(sessionUri);
+        session.setFileName(request.getFileName());
+        session.setMimeType(mimeType);
+        session.setTotalSize(request.getSize());
+        session.setStatus(UploadSession.Status.ACTIVE);
+        session.setUpdatedAt(LocalDateTime.now());
+        uploadSessionRepository.save(session);
+        return UploadSessionDTO.fromEntity(session);
+    }
+
+    // Current state of the session. Active sessions are checked with Drive, which knows the real offset
+    // even if the node that was uploading went away before recording it.
+    public UploadSessionDTO getSession(String userId, String sessionId) throws IOException {
+        UploadSession session = findSession(userId, sessionId);
+        if (session.getStatus() == UploadSession.Status.ACTIVE) {
+            refreshFromDrive(session, userId, driveService.getDriveService(userId));
+        }
+        return UploadSessionDTO.fromEntity(session);
+    }
+
+    // Send the request body to Drive from the given offset, one chunk at a time. The offset has to be the
+    // committed offset of the session. If the transfer breaks off, the client looks the session up and
+    // sends the rest from the offset it gets back. The chunk buffer is held against the transfer budget.
+    public UploadSessionDTO uploadToSession(String userId, String sessionId, long offset, InputStream content)
+            throws IOException {
+        UploadSession session = findSession(userId, sessionId);
+        if (session.getStatus() != UploadSession.Status.ACTIVE) {
+            throw new BadRequestException("Upload session is " + session.getStatus().name().toLowerCase());
+        }
+        if (offset != session.getCommittedOffset()) {
+            throw new BadRequestException("Upload has to continue from offset " + session.getCommittedOffset());
+        }
+
+        Drive drive = driveService.getDriveService(userId);
+        long total = session.getTotalSize();
+        int chunkSize = (int) Math.min((long) uploadChunkSizeMb * 1024 * 1024, total - offset);
+        try (TransferBudget.Permit permit = transferBudget.acquire(chunkSize, TransferBudget.Direction.UPLOAD)) {
+            byte[] chunk = new byte[chunkSize];
+            long position = offset;
+            while (session.getStatus() == UploadSession.Status.ACTIVE && position < total) {
+                int length = content.readNBytes(chunk, 0, (int) Math.min(chunk.length, total - position));
+                if (length == 0) {
+                    break;
+                }
+
+                HttpRequest request = drive.getRequestFactory().buildPutRequest(
+                        new GenericUrl(session.getDriveSessionUri()), new ByteArrayContent(null, chunk, 0, length));
+                request.getHeaders().setContentRange("bytes " + position + "-" + (position + length - 1) + "/" + total);
+                // A chunk Drive may have partly taken must not be sent again as is. Instead of retrying here,
+                // the committed offset is read back from Drive and the client resumes from it.
+                request.setUnsuccessfulResponseHandler(null).setIOExceptionHandler(null);
+                try {
+                    applyDriveResponse(session, userId, drive, request);
+                } catch (IOException e) {
+                    log.warn("Chunk at {} of upload session {} failed: {}", position, sessionId, e.getMessage());
+                    refreshQuietly(session, userId, drive);
+                    throw e;
+                }
+
+                // Drive can keep fewer bytes than it was sent, the client sends the rest again from there
+                if (session.getCommittedOffset() < position + length) {
+                    break;
+                }
+                position = session.getCommittedOffset();
+            }
+        }
+        return UploadSessionDTO.fromEntity(session);
+    }
+
+    private UploadSession findSession(String userId, String sessionId) {
+        return uploadSessionRepository.findBySessionIdAndUser_OauthId(sessionId, userId)
+                .orElseThrow(() -> new RecordNotFoundException("Upload session not found"));
+    }
+
+    private void refreshFromDrive(UploadSession session, String userId, Drive drive) throws IOException {
+        HttpRequest request = drive.getRequestFactory().buildPutRequest(
+                new GenericUrl(session.getDriveSessionUri()), new EmptyContent());
+        request.getHeaders().setContentRange("bytes */" + session.getTotalSize());
+        applyDriveResponse(session, userId, drive, request);
+    }
+
+    private void refreshQuietly(UploadSession session, String userId, Drive drive) {
+        try {
+            refreshFromDrive(session, userId, drive);
+        } catch (IOException e) {
+            log.warn("Could not read the offset of upload session {}: {}", session.getSessionId(), e.getMessage());
+        }
+    }
+
+    // 308 means Drive wants more and says in the Range header what it has, 200/201 carries the created file,
+    // and 404/410 mean Drive has dropped the session
+    private void applyDriveResponse(UploadSession session, String userId, Drive drive, HttpRequest request)
+            throws IOException {
+        request.setThrowExceptionOnExecuteError(false);
+        request.setFollowRedirects(false);
+        request.setParser(drive.getObjectParser());
+
+        HttpResponse response = request.execute();
+        try {
+            int status = response.getStatusCode();
+            if (status == RESUME_INCOMPLETE) {
+                session.setCommittedOffset(committedOffset(response.getHeaders().getRange()));
+            } else if (response.isSuccessStatusCode()) {
+                complete(session, userId, response.parseAs(File.class));
+            } else if (status == 404 || status == 410) {
+                session.setStatus(UploadSession.Status.EXPIRED);
+            } else {
+                throw new HttpResponseException(response);
+            }
+        } finally {
+            response.disconnect();
+        }
+
+        session.setUpdatedAt(LocalDateTime.now());
+        uploadSessionRepository.save(session);
+    }
+
+    // Range comes back as "bytes=0-<last byte received>", and is left out when Drive has nothing yet
+    private static long committedOffset(String range) {
+        if (range == null) {
+            return 0;
+        }
+        return Long.parseLong(range.substring(range.lastIndexOf('-') + 1)) + 1;
+    }
+
+    private void complete(UploadSession session, String userId, File uploadedFile) {
+        session.setStatus(UploadSession.Status.COMPLETED);
+        session.setCommittedOffset(session.getTotalSize());
+        session.setDriveFileId(uploadedFile.getId());
+
+        // Upsert, two nodes may both see the upload finish
+        User user = userRepository.findByOauthId(userId);
+        fileRepository.upsertAll(user.getId(), List.of(FileMetadata.fromDriveFile(uploadedFile, user)));
+        listingCache.invalidate(userId);
+    }
+}
@@ -0,0 +1,39 @@
+package com.strac.files.utils;
+
+import com.strac.files.exceptions.BadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * Encodes the position of the last row of a page into an opaque cursor.
+ * The cursor holds the sort key and the row id, which is all a keyset query needs to carry on
+ * from where the previous page stopped.
+ */
+public final class CursorUtil {
+
+    private static final char SEPARATOR = '\n';
+
+    private CursorUtil() {
+    }
+
+    public record Cursor(String key, long id) {
+    }
+
+    public static String encode(String key, long id) {
+        String raw = id + String.valueOf(SEPARATOR) + key;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Cursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separatorIndex = raw.indexOf(SEPARATOR);
+            return new Cursor(raw.substring(separatorIndex + 1), Long.parseLong(raw.substring(0, separatorIndex)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new BadRequestException("Invalid cursor");
+        }
+    }
+}
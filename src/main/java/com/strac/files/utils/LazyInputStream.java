@@ -0,0 +1,57 @@
+package com.strac.files.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * Opens its source on the first read. Wrapped in a ReadAheadInputStream, the request that opens the
+ * source (such as a Drive media download) runs on the read-ahead thread instead of the caller's.
+ */
+public class LazyInputStream extends InputStream {
+
+    @FunctionalInterface
+    public interface Opener {
+        InputStream open() throws IOException;
+    }
+
+    private final Opener opener;
+
+    private volatile InputStream source;
+
+    private volatile boolean closed;
+
+    public LazyInputStream(Opener opener) {
+        this.opener = opener;
+    }
+
+    private InputStream source() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (source == null) {
+            source = opener.open();
+        }
+        return source;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return source().read();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        return source().read(buffer, offset, length);
+    }
+
+    // Closes the source if it was opened
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (source != null) {
+            source.close();
+        }
+    }
+}
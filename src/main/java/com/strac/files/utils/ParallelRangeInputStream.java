@@ -0,0 +1,145 @@
+package com.strac.files.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * Reads bytes start to end (inclusive) of a remote file as one stream, fetching it in parts of partSize
+ * over up to parallelism connections at once. Parts are read ahead on the executor and handed out in
+ * order, so a part that arrives early waits in its buffer until the parts before it were read. The reorder
+ * buffer is therefore at most parallelism parts. When the executor has no room for a part, that part is
+ * fetched by the reader itself when it gets to it.
+ */
+public class ParallelRangeInputStream extends InputStream {
+
+    private static final int BLOCK_SIZE = 256 * 1024;
+
+    @FunctionalInterface
+    public interface RangeFetcher {
+        // Open a stream of bytes from to to (inclusive)
+        InputStream fetch(long from, long to) throws IOException;
+    }
+
+    private final RangeFetcher fetcher;
+
+    private final long end;
+
+    private final long partSize;
+
+    private final int parallelism;
+
+    private final Executor executor;
+
+    private final Deque<Part> parts = new ArrayDeque<>();
+
+    private long nextPartStart;
+
+    private boolean closed;
+
+    private static class Part {
+
+        private final LazyInputStream source;
+
+        private final InputStream content;
+
+        private long remaining;
+
+        Part(LazyInputStream source, InputStream content, long length) {
+            this.source = source;
+            this.content = content;
+            this.remaining = length;
+        }
+    }
+
+    public ParallelRangeInputStream(RangeFetcher fetcher, long start, long end, long partSize, int parallelism,
+                                    Executor executor) {
+        this.fetcher = fetcher;
+        this.end = end;
+        this.partSize = partSize;
+        this.parallelism = parallelism;
+        this.executor = executor;
+        this.nextPartStart = start;
+        fillWindow();
+    }
+
+    private void fillWindow() {
+        while (parts.size() < parallelism && nextPartStart <= end) {
+            long from = nextPartStart;
+            long to = Math.min(end, from + partSize - 1);
+            nextPartStart = to + 1;
+
+            LazyInputStream source = new LazyInputStream(() -> fetcher.fetch(from, to));
+            InputStream content;
+            try {
+                int maxBlocks = (int) Math.max(1, (to - from + BLOCK_SIZE) / BLOCK_SIZE);
+                content = new ReadAheadInputStream(source, BLOCK_SIZE, maxBlocks, executor);
+            } catch (RejectedExecutionException e) {
+                content = source;
+            }
+            parts.add(new Part(source, content, to - from + 1));
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (length == 0) {
+            return 0;
+        }
+        while (!parts.isEmpty()) {
+            Part part = parts.peek();
+            int read = part.content.read(buffer, offset, length);
+            if (read != -1) {
+                part.remaining -= read;
+                return read;
+            }
+            // A part cut short would leave a gap in the middle of the content
+            if (part.remaining != 0) {
+                throw new IOException("Range fetch ended " + part.remaining + " bytes early");
+            }
+            close(parts.poll());
+            fillWindow();
+        }
+        return -1;
+    }
+
+    // Stops every part still being fetched
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        IOException failure = null;
+        while (!parts.isEmpty()) {
+            try {
+                close(parts.poll());
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static void close(Part part) throws IOException {
+        try {
+            part.content.close();
+        } finally {
+            part.source.close();
+        }
+    }
+}
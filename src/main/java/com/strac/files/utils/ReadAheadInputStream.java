@@ -0,0 +1,142 @@
+package com.strac.files.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * Reads a source stream ahead of its consumer on another thread, holding at most maxBlocks
+ * blocks in memory. An upload reading from the client through this stream keeps receiving the
+ * next chunk while the current one is being sent to Drive, instead of alternating between the two.
+ */
+public class ReadAheadInputStream extends InputStream {
+
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    private static final long OFFER_TIMEOUT_MS = 100;
+
+    private final InputStream source;
+
+    private final int blockSize;
+
+    private final BlockingQueue<byte[]> blocks;
+
+    private final CountDownLatch readerDone = new CountDownLatch(1);
+
+    private volatile boolean closed;
+
+    private volatile IOException readFailure;
+
+    private byte[] current;
+
+    private int position;
+
+    // Throws RejectedExecutionException if the executor has no room for the reader
+    public ReadAheadInputStream(InputStream source, int blockSize, int maxBlocks, Executor executor) {
+        this.source = source;
+        this.blockSize = blockSize;
+        this.blocks = new ArrayBlockingQueue<>(maxBlocks + 1);
+        executor.execute(this::readSource);
+    }
+
+    private void readSource() {
+        try {
+            byte[] block;
+            do {
+                block = source.readNBytes(blockSize);
+                if (block.length > 0 && !offer(block)) {
+                    return;
+                }
+            } while (block.length == blockSize);
+        } catch (IOException e) {
+            readFailure = e;
+        } finally {
+            offer(END_OF_STREAM);
+            readerDone.countDown();
+        }
+    }
+
+    // Wait for room in the queue, giving up once the consumer has closed the stream
+    private boolean offer(byte[] block) {
+        try {
+            while (!closed) {
+                if (blocks.offer(block, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (current == null || position == current.length) {
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    private boolean nextBlock() throws IOException {
+        if (current == END_OF_STREAM) {
+            return false;
+        }
+        try {
+            current = blocks.take();
+            position = 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for data");
+        }
+
+        if (current == END_OF_STREAM) {
+            if (readFailure != null) {
+                throw readFailure;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int available() {
+        return current == null || current == END_OF_STREAM ? 0 : current.length - position;
+    }
+
+    // Stops the reader and waits for it, so the source is no longer in use once this returns
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        blocks.clear();
+        try {
+            readerDone.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing");
+        }
+    }
+}
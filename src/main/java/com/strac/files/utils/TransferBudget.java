@@ -0,0 +1,120 @@
+package com.strac.files.utils;
+
+import com.strac.files.exceptions.TooManyRequestsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * Caps the bytes this node has in flight across all uploads and downloads. A transfer takes a share of
+ * the budget before it starts and gives it back when it is done: the size of its content when the content is
+ * spooled, or the size of its buffers when the content streams through. When the budget
+ * is used up a transfer waits a short while for room, and is then turned away with 429 and Retry-After,
+ * so an upload storm slows the node down instead of filling its disk or heap.
+ * A transfer bigger than the whole budget can still run, on its own.
+ * Usage is published as files.transfer.budget.* metrics.
+ */
+@Component
+public class TransferBudget {
+
+    private static final int UNIT = 1024;
+
+    private final Semaphore units;
+
+    private final int totalUnits;
+
+    private final long queueTimeoutMs;
+
+    private final long retryAfterSec;
+
+    private final AtomicInteger activeTransfers = new AtomicInteger();
+
+    private final Counter rejectedUploads;
+
+    private final Counter rejectedDownloads;
+
+    public enum Direction {
+        UPLOAD, DOWNLOAD
+    }
+
+    public TransferBudget(@Value("${files.transfer.budget.mb}") int budgetMb,
+                          @Value("${files.transfer.budget.queue.timeout.ms}") long queueTimeoutMs,
+                          @Value("${files.transfer.budget.retry.after.sec}") long retryAfterSec,
+                          MeterRegistry meterRegistry) {
+        this.totalUnits = budgetMb * (1024 * 1024 / UNIT);
+        this.units = new Semaphore(totalUnits, true);
+        this.queueTimeoutMs = queueTimeoutMs;
+        this.retryAfterSec = retryAfterSec;
+
+        Gauge.builder("files.transfer.budget.used", this, TransferBudget::usedBytes)
+                .baseUnit("bytes").description("Bytes of uploads and downloads in flight").register(meterRegistry);
+        Gauge.builder("files.transfer.budget.limit", this, budget -> (double) budget.totalUnits * UNIT)
+                .baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("files.transfer.budget.active", activeTransfers, AtomicInteger::get)
+                .description("Uploads and downloads holding part of the budget").register(meterRegistry);
+        this.rejectedUploads = Counter.builder("files.transfer.budget.rejected")
+                .tag("direction", "upload").register(meterRegistry);
+        this.rejectedDownloads = Counter.builder("files.transfer.budget.rejected")
+                .tag("direction", "download").register(meterRegistry);
+    }
+
+    // Take bytes out of the budget, waiting up to the queue timeout for room. Close the permit when the
+    // transfer is over. Throws TooManyRequestsException if there is still no room after waiting.
+    public Permit acquire(long bytes, Direction direction) throws InterruptedIOException {
+        int requested = (int) Math.min(totalUnits, (Math.max(bytes, 0) + UNIT - 1) / UNIT);
+        try {
+            if (!units.tryAcquire(requested, queueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                (direction == Direction.UPLOAD ? rejectedUploads : rejectedDownloads).increment();
+                throw new TooManyRequestsException("Too many transfers in progress, try again later", retryAfterSec);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for transfer budget");
+        }
+        activeTransfers.incrementAndGet();
+        return new Permit(requested);
+    }
+
+    public double usedBytes() {
+        return (double) (totalUnits - units.availablePermits()) * UNIT;
+    }
+
+    public class Permit implements AutoCloseable {
+
+        private final int held;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(int held) {
+            this.held = held;
+        }
+
+        // Hand what this permit holds to a new one, for a transfer that outlives the code that took it.
+        // This permit is then done with, closing it gives nothing back.
+        public Permit transfer() {
+            if (!released.compareAndSet(false, true)) {
+                throw new IllegalStateException("Permit was already released");
+            }
+            return new Permit(held);
+        }
+
+        // Safe to call more than once
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                units.release(held);
+                activeTransfers.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+-- Runs on every startup after Hibernate has updated the tables, so every statement must be idempotent.
+
+-- Trigram index for name prefix and substring search (lower(file_name) LIKE '%...%').
+-- btree_gin lets user_id live in the same GIN index, since every search is scoped to one user.
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE EXTENSION IF NOT EXISTS btree_gin;
+CREATE INDEX IF NOT EXISTS idx_file_metadata_user_name_trgm
+    ON file_metadata USING gin (user_id, lower(file_name) gin_trgm_ops);
+
+-- Rows stored before modified_time was synced from Drive get their last update time,
+-- so that sorting and paging on modified time never meets a NULL. The partial index only holds such rows,
+-- so once it exists the backfill is an index lookup instead of a scan of the whole table on every startup.
+CREATE INDEX IF NOT EXISTS idx_file_metadata_missing_modified_time
+    ON file_metadata (id) WHERE modified_time IS NULL;
+UPDATE file_metadata SET modified_time = updated_at WHERE modified_time IS NULL;
+
+-- One row per Drive file of a user, which the ON CONFLICT upserts rely on. Hibernate adds this constraint
+-- quietly and skips it if duplicates left by the old find-then-save sync are still there, so those are
+-- removed first, keeping the most recently updated row. Once the unique index exists there can be no
+-- duplicates, and the check on it keeps the delete from scanning the table on every startup.
+DELETE FROM file_metadata
+WHERE to_regclass('uk_file_metadata_user_drive_file') IS NULL
+  AND id IN (SELECT id
+             FROM (SELECT id, row_number() OVER (PARTITION BY user_id, drive_file_id
+                                                 ORDER BY updated_at DESC NULLS LAST, id DESC) AS copy
+                   FROM file_metadata) ranked
+             WHERE copy > 1);
+CREATE UNIQUE INDEX IF NOT EXISTS uk_file_metadata_user_drive_file ON file_metadata (user_id, drive_file_id);
@@ -0,0 +1,44 @@
+package com.strac.files.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+public class ExportCacheTest {
+
+    private final ExportCache exportCache = new ExportCache(1, new SimpleMeterRegistry());
+
+    @Test
+    void get_ExportsEachVersionAndFormatOnce() throws IOException {
+        AtomicInteger exports = new AtomicInteger();
+        ExportCache.Exporter exporter = () -> new byte[]{(byte) exports.incrementAndGet()};
+
+        byte[] first = exportCache.get(new ExportCache.ExportKey("doc-1", 3, "application/pdf"), exporter);
+        byte[] again = exportCache.get(new ExportCache.ExportKey("doc-1", 3, "application/pdf"), exporter);
+        exportCache.get(new ExportCache.ExportKey("doc-1", 4, "application/pdf"), exporter);
+        exportCache.get(new ExportCache.ExportKey("doc-1", 4, "text/plain"), exporter);
+
+        assertEquals(3, exports.get());
+        assertArrayEquals(first, again);
+    }
+
+    @Test
+    void get_WhenExportFails_ThrowsAndCachesNothing() throws IOException {
+        ExportCache.ExportKey key = new ExportCache.ExportKey("doc-1", 3, "application/pdf");
+
+        IOException exception = assertThrows(IOException.class, () -> exportCache.get(key, () -> {
+            throw new IOException("Drive unavailable");
+        }));
+        byte[] content = exportCache.get(key, () -> new byte[]{1});
+
+        assertEquals("Drive unavailable", exception.getMessage());
+        assertArrayEquals(new byte[]{1}, content);
+    }
+}
@@ -0,0 +1,172 @@
+package com.strac.files.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+public class FileContentCacheTest {
+
+    private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path cacheDir;
+
+    // The registry of the cache created last, each cache gets its own
+    private SimpleMeterRegistry meterRegistry;
+
+    @Test
+    void find_AfterCommittedFill_SendsTheCachedBytes() throws IOException {
+        // Arrange
+        FileContentCache cache = newCache(true, 1);
+        ByteArrayOutputStream client = new ByteArrayOutputStream();
+        fill(cache, "file-1", 3L, client);
+
+        // Act
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        try (FileContentCache.CachedContent cached = cache.find("file-1", 3L)) {
+            assertFalse(cached.handOff(2, 5, new MockHttpServletRequest()));
+            cached.transferTo(2, 5, sent);
+        }
+
+        // Assert
+        assertArrayEquals(CONTENT, client.toByteArray());
+        assertEquals("2345", sent.toString(StandardCharsets.UTF_8));
+        assertNull(cache.find("file-1", 4L));
+        assertEquals(10.0, meterRegistry.get("files.content.cache.size").gauge().value());
+        assertEquals(4.0, meterRegistry.get("files.content.cache.served").counter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "file-content").tag("result", "hit")
+                .functionCounter().count());
+    }
+
+    @Test
+    void handOff_WhenSendfileIsSupported_HandsTheFileToTheConnector() throws IOException {
+        // Arrange
+        FileContentCache cache = newCache(true, 1);
+        fill(cache, "file-1", 3L, new ByteArrayOutputStream());
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+
+        // Act
+        boolean handedOff;
+        try (FileContentCache.CachedContent cached = cache.find("file-1", 3L)) {
+            handedOff = cached.handOff(0, 9, request);
+        }
+
+        // Assert
+        assertTrue(handedOff);
+        assertTrue(Files.exists(Path.of((String) request.getAttribute("org.apache.tomcat.sendfile.filename"))));
+        assertEquals(0L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+        assertEquals(10L, request.getAttribute("org.apache.tomcat.sendfile.end"));
+    }
+
+    @Test
+    void fill_WhenNotCommitted_CachesNothing() throws IOException {
+        // Arrange
+        FileContentCache cache = newCache(true, 1);
+
+        // Act
+        try (FileContentCache.Fill fill = cache.startFill("file-1", 3L, CONTENT.length)) {
+            fill.wrap(new ByteArrayOutputStream()).write(CONTENT, 0, 4);
+        }
+
+        // Assert
+        assertNull(cache.find("file-1", 3L));
+        assertEquals(0, countFiles());
+    }
+
+    @Test
+    void fill_WhenCacheIsFull_EvictsAndDeletesOlderFiles() throws IOException {
+        // Arrange
+        FileContentCache cache = newCache(true, 1);
+        byte[] large = new byte[600 * 1024];
+
+        // Act
+        for (String fileId : new String[]{"file-1", "file-2"}) {
+            try (FileContentCache.Fill fill = cache.startFill(fileId, 1L, large.length)) {
+                fill.wrap(OutputStream.nullOutputStream()).write(large);
+                fill.commit();
+            }
+        }
+
+        // Assert
+        assertEquals(1, countFiles());
+        assertEquals(large.length, meterRegistry.get("files.content.cache.size").gauge().value());
+    }
+
+    @Test
+    void startFill_ReservesTheSizeOfTheFileInTheCache() throws IOException {
+        // Arrange
+        FileContentCache cache = newCache(true, 1);
+        byte[] large = new byte[600 * 1024];
+        try (FileContentCache.Fill fill = cache.startFill("file-1", 1L, large.length)) {
+            fill.wrap(OutputStream.nullOutputStream()).write(large);
+            fill.commit();
+        }
+
+        // Act
+        FileContentCache.Fill second = cache.startFill("file-2", 1L, large.length);
+        FileContentCache.Fill third = cache.startFill("file-3", 1L, large.length);
+
+        // Assert
+        assertNotNull(second);
+        assertNull(third);
+        assertNull(cache.find("file-1", 1L));
+        assertEquals(1, countFiles());
+        assertEquals(0.0, meterRegistry.get("files.content.cache.size").gauge().value());
+
+        // Closing the fill gives its room back
+        second.close();
+        try (FileContentCache.Fill fill = cache.startFill("file-3", 1L, large.length)) {
+            assertNotNull(fill);
+        }
+    }
+
+    @Test
+    void startFill_WhenDisabledOrAlreadyFilling_ReturnsNull() throws IOException {
+        FileContentCache disabled = newCache(false, 1);
+        assertNull(disabled.startFill("file-1", 3L, CONTENT.length));
+        assertNull(disabled.find("file-1", 3L));
+
+        FileContentCache cache = newCache(true, 1);
+        try (FileContentCache.Fill fill = cache.startFill("file-1", 3L, CONTENT.length)) {
+            assertNotNull(fill);
+            assertNull(cache.startFill("file-1", 3L, CONTENT.length));
+        }
+        assertNull(cache.startFill("file-1", null, CONTENT.length));
+    }
+
+    private FileContentCache newCache(boolean enabled, long maxMb) throws IOException {
+        meterRegistry = new SimpleMeterRegistry();
+        return new FileContentCache(enabled, cacheDir.toString(), maxMb, maxMb, 0, meterRegistry);
+    }
+
+    private static void fill(FileContentCache cache, String fileId, Long version, OutputStream client)
+            throws IOException {
+        try (FileContentCache.Fill fill = cache.startFill(fileId, version, CONTENT.length)) {
+            OutputStream stream = fill.wrap(client);
+            stream.write(CONTENT, 0, 4);
+            stream.write(CONTENT, 4, 6);
+            fill.commit();
+        }
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            return files.count();
+        }
+    }
+}
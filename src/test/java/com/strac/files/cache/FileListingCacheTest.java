@@ -0,0 +1,65 @@
+package com.strac.files.cache;
+
+import com.strac.files.models.dto.FileMetadataDTO;
+import com.strac.files.models.dto.FilePageDTO;
+import com.strac.files.models.dto.FileQuery;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+public class FileListingCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private FileListingCache listingCache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        listingCache = new FileListingCache(1000, 60, meterRegistry);
+    }
+
+    @Test
+    void get_WhenPageIsCached_DoesNotCallLoaderAgain() {
+        AtomicInteger loads = new AtomicInteger();
+        FileListingCache.ListingKey key = new FileListingCache.ListingKey("user-1", new FileQuery(), null, 10);
+
+        listingCache.get(key, () -> page(loads.incrementAndGet()));
+        FilePageDTO result = listingCache.get(key, () -> page(loads.incrementAndGet()));
+
+        assertEquals(1, loads.get());
+        assertEquals("file-1", result.getFiles().get(0).getFileName());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "file-listing").tag("result", "hit")
+                .functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "file-listing").tag("result", "miss")
+                .functionCounter().count());
+    }
+
+    @Test
+    void invalidate_DropsOnlyThatUsersPages() {
+        AtomicInteger loads = new AtomicInteger();
+        FileListingCache.ListingKey firstUser = new FileListingCache.ListingKey("user-1", new FileQuery(), null, 10);
+        FileListingCache.ListingKey secondUser = new FileListingCache.ListingKey("user-2", new FileQuery(), null, 10);
+        listingCache.get(firstUser, () -> page(loads.incrementAndGet()));
+        listingCache.get(secondUser, () -> page(loads.incrementAndGet()));
+
+        listingCache.invalidate("user-1");
+        listingCache.get(firstUser, () -> page(loads.incrementAndGet()));
+        listingCache.get(secondUser, () -> page(loads.incrementAndGet()));
+
+        assertEquals(3, loads.get());
+    }
+
+    private static FilePageDTO page(int number) {
+        FileMetadataDTO file = new FileMetadataDTO("id-" + number, "file-" + number, "text/plain", LocalDateTime.now(), null);
+        return new FilePageDTO(Collections.singletonList(file), null);
+    }
+}
@@ -0,0 +1,38 @@
+package com.strac.files.cache;
+
+import com.strac.files.models.dto.FileMetadataDTO;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+public class UploadJobRegistryTest {
+
+    @Test
+    void find_OnlyReturnsJobsOfTheUser() {
+        UploadJobRegistry registry = new UploadJobRegistry(100, 60);
+        UploadJob job = registry.create("user-1", "a.txt", "text/plain", 10);
+
+        assertSame(job, registry.find("user-1", job.getJobId()).orElseThrow());
+        assertTrue(registry.find("user-2", job.getJobId()).isEmpty());
+    }
+
+    @Test
+    void finished_StartsRetentionWhileRunningJobsAreKept() {
+        // Arrange
+        UploadJobRegistry registry = new UploadJobRegistry(100, 0);
+        UploadJob running = registry.create("user-1", "a.txt", "text/plain", 10);
+        UploadJob done = registry.create("user-1", "b.txt", "text/plain", 10);
+
+        // Act
+        running.start();
+        done.complete(new FileMetadataDTO());
+        registry.finished(done);
+
+        // Assert
+        assertTrue(registry.find("user-1", running.getJobId()).isPresent());
+        assertTrue(registry.find("user-1", done.getJobId()).isEmpty());
+    }
+}
@@ -0,0 +1,96 @@
+package com.strac.files.config;
+
+import com.strac.files.controllers.GoogleDriveController;
+import com.strac.files.models.User;
+import com.strac.files.services.FileService;
+import com.strac.files.services.OAuth2Service;
+import com.strac.files.services.UploadSessionService;
+import com.strac.files.services.UserService;
+import com.strac.files.utils.JwtUtil;
+import com.strac.files.utils.TransferBudget;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+
+@WebMvcTest(GoogleDriveController.class)
+@Import({SecurityConfig.class, ExecutorConfig.class})
+public class SecurityConfigTest {
+
+    private static final String OAUTH_ID = "test-oauth-id";
+    private static final String TOKEN = "test-token";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private FileService fileService;
+
+    @MockitoBean
+    private UploadSessionService uploadSessionService;
+
+    @MockitoBean
+    private OAuth2Service auth;
+
+    @MockitoBean
+    private UserService userService;
+
+    @MockitoBean
+    private JwtUtil jwtUtil;
+
+    @MockitoBean
+    private TransferBudget transferBudget;
+
+    @BeforeEach
+    void setUp() {
+        User user = new User();
+        user.setOauthId(OAUTH_ID);
+        when(jwtUtil.extractIdFromToken(TOKEN)).thenReturn(OAUTH_ID);
+        when(jwtUtil.validateToken(TOKEN, OAUTH_ID)).thenReturn(true);
+        when(userService.findUserByOauthId(OAUTH_ID)).thenReturn(user);
+        when(auth.getOauthId()).thenReturn(OAUTH_ID);
+    }
+
+    @Test
+    void streamedResponse_WithValidToken_IsWrittenAfterTheAsyncDispatch() throws Exception {
+        // Arrange
+        StreamingResponseBody body = out -> out.write("{\"driveFileId\":\"file1\"}\n".getBytes(StandardCharsets.UTF_8));
+        when(fileService.streamFilesByUserId(OAUTH_ID)).thenReturn(body);
+
+        // Act
+        MvcResult result = mockMvc.perform(get("/api/google-drive/files/stream")
+                        .header("Authorization", "Bearer " + TOKEN))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Assert
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"driveFileId\":\"file1\"}\n"));
+    }
+
+    @Test
+    void streamedResponse_WithoutToken_IsRejected() throws Exception {
+        // Act & Assert
+        mockMvc.perform(get("/api/google-drive/files/stream"))
+                .andExpect(status().isForbidden());
+    }
+}
@@ -0,0 +1,129 @@
+package com.strac.files.controllers;
+
+import com.google.api.services.drive.Drive;
+import com.strac.files.models.FileMetadata;
+import com.strac.files.models.User;
+import com.strac.files.models.repositories.FileRepository;
+import com.strac.files.models.repositories.UserRepository;
+import com.strac.files.services.DriveService;
+import com.strac.files.services.DriveSyncService;
+import com.strac.files.utils.JwtUtil;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import javax.sql.DataSource;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * Runs against an in-memory H2 database, so it needs no Postgres.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:download-connection;MODE=PostgreSQL",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.sql.init.mode=never"
+})
+@AutoConfigureMockMvc
+public class DownloadConnectionTest {
+
+    private static final String OAUTH_ID = "download-oauth-id";
+    private static final String TOKEN = "download-token";
+    private static final String FILE_ID = "file-1";
+    private static final byte[] CONTENT = "file content".getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @MockitoBean
+    private DriveService driveService;
+
+    @MockitoBean
+    private DriveSyncService driveSyncService;
+
+    @MockitoBean
+    private JwtUtil jwtUtil;
+
+    @BeforeEach
+    void setUp() {
+        User user = userRepository.findByOauthId(OAUTH_ID);
+        if (user == null) {
+            user = new User();
+            user.setOauthId(OAUTH_ID);
+            user.setEmail("download@example.com");
+            userRepository.save(user);
+
+            FileMetadata file = new FileMetadata();
+            file.setUser(user);
+            file.setDriveFileId(FILE_ID);
+            file.setFileName("file.txt");
+            file.setMimeType("text/plain");
+            file.setSize((long) CONTENT.length);
+            fileRepository.save(file);
+        }
+
+        when(jwtUtil.extractIdFromToken(TOKEN)).thenReturn(OAUTH_ID);
+        when(jwtUtil.validateToken(TOKEN, OAUTH_ID)).thenReturn(true);
+        when(driveSyncService.isFresh(OAUTH_ID)).thenReturn(true);
+    }
+
+    @Test
+    void downloadFile_HoldsNoConnectionWhileTheBodyStreams() throws Exception {
+        // Arrange
+        AtomicInteger activeWhileStreaming = new AtomicInteger(-1);
+        Drive drive = mock(Drive.class);
+        Drive.Files files = mock(Drive.Files.class);
+        Drive.Files.Get media = mock(Drive.Files.Get.class);
+        when(driveService.getDriveService(OAUTH_ID)).thenReturn(drive);
+        when(drive.files()).thenReturn(files);
+        when(files.get(FILE_ID)).thenReturn(media);
+        doAnswer(invocation -> {
+            activeWhileStreaming.set(((HikariDataSource) dataSource).getHikariPoolMXBean().getActiveConnections());
+            invocation.<OutputStream>getArgument(0).write(CONTENT);
+            return null;
+        }).when(media).executeMediaAndDownloadTo(any(OutputStream.class));
+
+        // Act
+        MvcResult result = mockMvc.perform(get("/api/google-drive/download/" + FILE_ID)
+                        .header("Authorization", "Bearer " + TOKEN))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Assert
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(CONTENT));
+        assertEquals(0, activeWhileStreaming.get());
+    }
+}
@@ -1,16 +1,31 @@
 package com.strac.files.controllers;
 
+import com.strac.files.cache.UploadJob;
+import com.strac.files.models.UploadSession;
+import com.strac.files.models.dto.BatchDeleteRequest;
+import com.strac.files.models.dto.DeleteResultDTO;
 import com.strac.files.models.dto.FileMetadataDTO;
+import com.strac.files.models.dto.FilePageDTO;
+import com.strac.files.models.dto.FileQuery;
+import com.strac.files.models.dto.UploadJobDTO;
+import com.strac.files.models.dto.UploadResultDTO;
+import com.strac.files.models.dto.UploadSessionDTO;
+import com.strac.files.models.dto.ZipDownloadRequest;
 import com.strac.files.services.FileService;
 import com.strac.files.services.OAuth2Service;
+import com.strac.files.services.UploadSessionService;
+import com.strac.files.utils.TransferBudget;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.async.WebAsyncTask;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
@@ -18,6 +33,8 @@ import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -28,6 +45,9 @@ public class GoogleDriveControllerTest {
     @Mock
     private FileService fileService;
 
+    @Mock
+    private UploadSessionService uploadSessionService;
+
     @Mock
     private OAuth2Service auth;
 
@@ -47,30 +67,109 @@ public class GoogleDriveControllerTest {
     @Test
     void testListFiles() throws IOException {
         List<FileMetadataDTO> mockFiles = Arrays.asList(
-                new FileMetadataDTO("file1", "test-file-1", "application/pdf", now),
-                new FileMetadataDTO("file2", "test-file-2", "image/png", now)
+                new FileMetadataDTO("file1", "test-file-1", "application/pdf", now, now),
+                new FileMetadataDTO("file2", "test-file-2", "image/png", now, now)
         );
-        when(fileService.listAllFilesByUserId(oauthId)).thenReturn(mockFiles);
+        FileQuery query = new FileQuery("test", null, null, null, null, "-modified");
+        when(fileService.listFilesByUserId(oauthId, query, "cursor", 2)).thenReturn(new FilePageDTO(mockFiles, "next"));
 
-        List<FileMetadataDTO> result = googleDriveController.listFiles();
+        FilePageDTO result = googleDriveController.listFiles("cursor", 2, query);
 
         assertNotNull(result);
-        assertEquals(2, result.size());
-        assertEquals("test-file-1", result.get(0).getFileName());
-        verify(fileService, times(1)).listAllFilesByUserId(oauthId);
+        assertEquals(2, result.getFiles().size());
+        assertEquals("test-file-1", result.getFiles().get(0).getFileName());
+        assertEquals("next", result.getNextCursor());
+        verify(fileService, times(1)).listFilesByUserId(oauthId, query, "cursor", 2);
+    }
+
+    @Test
+    void testStreamFiles() throws IOException {
+        StreamingResponseBody body = outputStream -> outputStream.write("{}\n".getBytes());
+        when(fileService.streamFilesByUserId(oauthId)).thenReturn(body);
+
+        StreamingResponseBody result = googleDriveController.streamFiles();
+
+        assertSame(body, result);
+        verify(fileService, times(1)).streamFilesByUserId(oauthId);
     }
 
     @Test
     void testUploadFile() throws IOException {
         MultipartFile mockFile = mock(MultipartFile.class);
-        FileMetadataDTO mockMetadata = new FileMetadataDTO("file1", "uploaded-file", "application/pdf", now);
-        when(fileService.uploadFile(mockFile, oauthId)).thenReturn(mockMetadata);
+        FileMetadataDTO mockMetadata = new FileMetadataDTO("file1", "uploaded-file", "application/pdf", now, now);
+        when(fileService.uploadFile(mockFile, oauthId, null)).thenReturn(mockMetadata);
 
-        FileMetadataDTO result = googleDriveController.uploadFile(mockFile);
+        FileMetadataDTO result = googleDriveController.uploadFile(mockFile, null);
 
         assertNotNull(result);
         assertEquals("uploaded-file", result.getFileName());
-        verify(fileService, times(1)).uploadFile(mockFile, oauthId);
+        verify(fileService, times(1)).uploadFile(mockFile, oauthId, null);
+    }
+
+    @Test
+    void testFindFileByContent() {
+        String md5 = "9473fdd0d880a43c21b7778d34872157";
+        FileMetadataDTO mockMetadata = new FileMetadataDTO("file1", "uploaded-file", "application/pdf", now, now);
+        when(fileService.findFileByContent(oauthId, md5, 12L)).thenReturn(mockMetadata);
+
+        FileMetadataDTO result = googleDriveController.findFileByContent(md5, 12L);
+
+        assertEquals("file1", result.getDriveFileId());
+        verify(fileService, times(1)).findFileByContent(oauthId, md5, 12L);
+    }
+
+    @Test
+    void testStreamUpload() throws IOException {
+        MockHttpServletRequest mockRequest = new MockHttpServletRequest();
+        List<FileMetadataDTO> mockMetadata = List.of(new FileMetadataDTO("file1", "uploaded-file", "application/pdf", now, now));
+        when(fileService.streamUpload(mockRequest, oauthId)).thenReturn(mockMetadata);
+
+        List<FileMetadataDTO> result = googleDriveController.streamUpload(mockRequest);
+
+        assertEquals(1, result.size());
+        verify(fileService, times(1)).streamUpload(mockRequest, oauthId);
+    }
+
+    @Test
+    void testUploadFiles() throws IOException {
+        List<MultipartFile> files = List.of(mock(MultipartFile.class), mock(MultipartFile.class));
+        List<UploadResultDTO> mockResults = List.of(
+                UploadResultDTO.success("a.txt", new FileMetadataDTO("file1", "a.txt", "text/plain", now, now)),
+                UploadResultDTO.failure("b.txt", "Upload failed: Drive unavailable"));
+        when(fileService.uploadFiles(files, oauthId)).thenReturn(mockResults);
+
+        List<UploadResultDTO> result = googleDriveController.uploadFiles(files);
+
+        assertEquals(mockResults, result);
+        verify(fileService, times(1)).uploadFiles(files, oauthId);
+    }
+
+    @Test
+    void testSubmitUploadJob() throws IOException {
+        MultipartFile mockFile = mock(MultipartFile.class);
+        TransferBudget.Permit permit = mock(TransferBudget.Permit.class);
+        UploadJobDTO mockJob = new UploadJobDTO("job-1", "big.bin", UploadJob.Status.QUEUED, 0, 1024, null, null);
+        when(fileService.submitUploadJob(mockFile, oauthId, permit)).thenReturn(mockJob);
+
+        ResponseEntity<UploadJobDTO> response = googleDriveController.submitUploadJob(mockFile, permit);
+
+        assertEquals(202, response.getStatusCode().value());
+        assertEquals("/api/google-drive/upload/jobs/job-1", response.getHeaders().getLocation().toString());
+        assertEquals(mockJob, response.getBody());
+    }
+
+    @Test
+    void testUploadToSession() throws IOException {
+        MockHttpServletRequest mockRequest = new MockHttpServletRequest();
+        mockRequest.setContent(new byte[]{1, 2, 3});
+        UploadSessionDTO mockSession = new UploadSessionDTO("session-1", "big.bin", "application/octet-stream",
+                3, 3, UploadSession.Status.COMPLETED, "file1");
+        when(uploadSessionService.uploadToSession(eq(oauthId), eq("session-1"), eq(0L), any())).thenReturn(mockSession);
+
+        UploadSessionDTO result = googleDriveController.uploadToSession("session-1", 0, mockRequest);
+
+        assertEquals(UploadSession.Status.COMPLETED, result.getStatus());
+        verify(uploadSessionService, times(1)).uploadToSession(eq(oauthId), eq("session-1"), eq(0L), any());
     }
 
     @Test
@@ -78,11 +177,37 @@ public class GoogleDriveControllerTest {
         String fileId = "test-file-id";
         MockHttpServletResponse mockResponse = new MockHttpServletResponse();
 
-        doNothing().when(fileService).downloadFile(fileId, oauthId, mockResponse);
+        MockHttpServletRequest mockRequest = new MockHttpServletRequest();
+
+        WebAsyncTask<Void> task = new WebAsyncTask<>(() -> null);
+        when(fileService.downloadFile(fileId, oauthId, mockRequest, mockResponse)).thenReturn(task);
 
-        googleDriveController.downloadFile(fileId, mockResponse);
+        assertSame(task, googleDriveController.downloadFile(fileId, mockRequest, mockResponse));
 
-        verify(fileService, times(1)).downloadFile(fileId, oauthId, mockResponse);
+        verify(fileService, times(1)).downloadFile(fileId, oauthId, mockRequest, mockResponse);
+    }
+
+    @Test
+    void testExportFile() throws IOException {
+        MockHttpServletResponse mockResponse = new MockHttpServletResponse();
+
+        googleDriveController.exportFile("doc-id", "application/pdf", mockResponse);
+
+        verify(fileService, times(1)).exportFile("doc-id", "application/pdf", oauthId, mockResponse);
+    }
+
+    @Test
+    void testDownloadZip() throws IOException {
+        List<String> fileIds = Arrays.asList("file-1", "file-2");
+        StreamingResponseBody body = outputStream -> outputStream.write(new byte[]{'P', 'K'});
+        when(fileService.downloadZip(fileIds, oauthId)).thenReturn(body);
+
+        ResponseEntity<StreamingResponseBody> response = googleDriveController.downloadZip(
+                new ZipDownloadRequest(fileIds));
+
+        assertEquals(200, response.getStatusCode().value());
+        assertSame(body, response.getBody());
+        assertEquals("attachment; filename=\"files.zip\"", response.getHeaders().getFirst("Content-Disposition"));
     }
 
     @Test
@@ -97,4 +222,16 @@ public class GoogleDriveControllerTest {
         assertEquals(204, response.getStatusCodeValue());
         verify(fileService, times(1)).deleteFileByDriveFileId(oauthId, fileId);
     }
+
+    @Test
+    void testDeleteFiles() throws IOException {
+        List<String> fileIds = Arrays.asList("file-1", "file-2");
+        List<DeleteResultDTO> results = Arrays.asList(DeleteResultDTO.success("file-1"),
+                DeleteResultDTO.failure("file-2", "Delete failed: Forbidden"));
+        when(fileService.deleteFiles(fileIds, oauthId)).thenReturn(results);
+
+        List<DeleteResultDTO> response = googleDriveController.deleteFiles(new BatchDeleteRequest(fileIds));
+
+        assertSame(results, response);
+    }
 }
@@ -0,0 +1,116 @@
+package com.strac.files.interceptors;
+
+import com.strac.files.exceptions.TooManyRequestsException;
+import com.strac.files.utils.TransferBudget;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+public class UploadAdmissionInterceptorTest {
+
+    private static final int MB = 1024 * 1024;
+
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+    private TransferBudget transferBudget;
+
+    private UploadAdmissionInterceptor interceptor;
+
+    @BeforeEach
+    void setUp() {
+        transferBudget = new TransferBudget(4, 0, 5, new SimpleMeterRegistry());
+        interceptor = new UploadAdmissionInterceptor();
+        ReflectionTestUtils.setField(interceptor, "transferBudget", transferBudget);
+        ReflectionTestUtils.setField(interceptor, "maxRequestSize", DataSize.ofMegabytes(3));
+    }
+
+    @Test
+    void preHandle_HoldsTheContentLengthUntilTheRequestCompletes() throws IOException {
+        // Arrange
+        MockHttpServletRequest request = multipartRequest();
+        request.setContent(new byte[MB]);
+
+        // Act
+        boolean proceed = interceptor.preHandle(request, response, null);
+        double usedWhileHandled = transferBudget.usedBytes();
+        interceptor.afterCompletion(request, response, null, null);
+
+        // Assert
+        assertTrue(proceed);
+        assertEquals(MB, usedWhileHandled);
+        assertEquals(0, transferBudget.usedBytes());
+    }
+
+    @Test
+    void preHandle_WithoutContentLength_HoldsTheMaxRequestSize() throws IOException {
+        // Act
+        interceptor.preHandle(multipartRequest(), response, null);
+
+        // Assert
+        assertEquals(3.0 * MB, transferBudget.usedBytes());
+    }
+
+    @Test
+    void preHandle_WhenTransferBudgetIsUsedUp_ThrowsTooManyRequests() throws IOException {
+        // Arrange
+        transferBudget.acquire(4L * MB, TransferBudget.Direction.DOWNLOAD);
+        MockHttpServletRequest request = multipartRequest();
+        request.setContent(new byte[10]);
+
+        // Act & Assert
+        TooManyRequestsException exception = assertThrows(TooManyRequestsException.class,
+                () -> interceptor.preHandle(request, response, null));
+        assertEquals(5, exception.getRetryAfterSeconds());
+        assertNull(request.getAttribute(UploadAdmissionInterceptor.PERMIT_ATTRIBUTE));
+    }
+
+    @Test
+    void afterCompletion_WhenThePermitWasHandedOn_LeavesItsShareHeld() throws IOException {
+        // Arrange
+        MockHttpServletRequest request = multipartRequest();
+        request.setContent(new byte[MB]);
+        interceptor.preHandle(request, response, null);
+        TransferBudget.Permit permit =
+                (TransferBudget.Permit) request.getAttribute(UploadAdmissionInterceptor.PERMIT_ATTRIBUTE);
+
+        // Act
+        TransferBudget.Permit jobPermit = permit.transfer();
+        interceptor.afterCompletion(request, response, null, null);
+
+        // Assert
+        assertEquals(MB, transferBudget.usedBytes());
+        jobPermit.close();
+        assertEquals(0, transferBudget.usedBytes());
+    }
+
+    @Test
+    void preHandle_ForOtherRequests_TakesNothing() throws IOException {
+        // Arrange
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/google-drive/upload");
+        request.setContentType("application/json");
+        request.setContent(new byte[MB]);
+
+        // Act
+        interceptor.preHandle(request, response, null);
+
+        // Assert
+        assertEquals(0, transferBudget.usedBytes());
+    }
+
+    private static MockHttpServletRequest multipartRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/google-drive/upload");
+        request.setContentType("multipart/form-data; boundary=boundary");
+        return request;
+    }
+}
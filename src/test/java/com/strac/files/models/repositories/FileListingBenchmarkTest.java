@@ -0,0 +1,149 @@
+package com.strac.files.models.repositories;
+
+import com.strac.files.models.FileMetadata;
+import com.strac.files.models.User;
+import com.strac.files.models.dto.FileListingRow;
+import com.strac.files.models.dto.FileMetadataDTO;
+import com.strac.files.models.dto.FileQuery;
+import com.strac.files.models.dto.FileSort;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Charles on 18/10/2026
+ *
+ * Compares reading a large listing as managed entities inside a read-write transaction (how listings
+ * used to be loaded) with reading it as FileListingRow projections inside a read-only transaction.
+ * Needs the Postgres database from application.properties and is skipped unless run with
+ * mvn test -Dtest=FileListingBenchmarkTest -Dbenchmark=true
+ * The time and allocation per listing of both paths are logged, measured over 20k rows of one user.
+ * They depend on the database host, so no reference figures are kept here.
+ */
+@Slf4j
+@SpringBootTest
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class FileListingBenchmarkTest {
+
+    private static final int FILE_COUNT = 20_000;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 20;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setOauthId("benchmark-" + System.currentTimeMillis());
+        user.setEmail(user.getOauthId() + "@example.com");
+        userRepository.save(user);
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Integer> numbers = IntStream.range(0, FILE_COUNT).boxed().collect(Collectors.toList());
+        jdbcTemplate.batchUpdate("INSERT INTO file_metadata (user_id, drive_file_id, file_name, mime_type, " +
+                        "modified_time, is_deleted, created_at, updated_at) VALUES (?, ?, ?, ?, ?, false, ?, ?)",
+                numbers, 1000, (ps, number) -> {
+                    ps.setLong(1, user.getId());
+                    ps.setString(2, "drive-file-" + number);
+                    ps.setString(3, String.format("file-%06d.txt", number));
+                    ps.setString(4, "text/plain");
+                    ps.setTimestamp(5, now);
+                    ps.setTimestamp(6, now);
+                    ps.setTimestamp(7, now);
+                });
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM file_metadata WHERE user_id = ?", user.getId());
+        userRepository.delete(user);
+    }
+
+    @Test
+    void projectionListingAllocatesLessThanEntityListing() {
+        Result entities = measure("entities, read-write transaction", this::listAsEntities);
+        Result projections = measure("projections, read-only transaction", this::listAsProjections);
+
+        assertTrue(projections.bytesPerRound() < entities.bytesPerRound(),
+                "projections allocated " + projections.bytesPerRound() + " bytes per listing, entities " +
+                        entities.bytesPerRound());
+    }
+
+    private List<FileMetadataDTO> listAsEntities() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        return transactionTemplate.execute(status -> entityManager.createQuery(
+                        "select f from FileMetadata f where f.user.oauthId = :userId order by f.fileName, f.id",
+                        FileMetadata.class)
+                .setParameter("userId", user.getOauthId())
+                .setMaxResults(FILE_COUNT)
+                .getResultList().stream()
+                .map(FileMetadataDTO::fromEntity)
+                .collect(Collectors.toList()));
+    }
+
+    private List<FileMetadataDTO> listAsProjections() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        return transactionTemplate.execute(status -> fileRepository
+                .findPage(user.getOauthId(), new FileQuery(), FileSort.NAME_ASC, null, FILE_COUNT).stream()
+                .map(FileListingRow::toDto)
+                .collect(Collectors.toList()));
+    }
+
+    private Result measure(String name, Supplier<List<FileMetadataDTO>> listing) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            assertEquals(FILE_COUNT, listing.get().size());
+        }
+
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long startBytes = threadBean.getCurrentThreadAllocatedBytes();
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            listing.get();
+        }
+        Result result = new Result((System.nanoTime() - startNanos) / MEASURED_ROUNDS / 1_000_000.0,
+                (threadBean.getCurrentThreadAllocatedBytes() - startBytes) / MEASURED_ROUNDS);
+
+        log.info("Listing {} files as {}: {} ms and {} KB allocated per listing",
+                FILE_COUNT, name, String.format("%.1f", result.millisPerRound()), result.bytesPerRound() / 1024);
+        return result;
+    }
+
+    private record Result(double millisPerRound, long bytesPerRound) {
+    }
+}
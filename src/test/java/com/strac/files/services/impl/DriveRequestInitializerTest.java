@@ -0,0 +1,117 @@
+package com.strac.files.services.impl;
+
+import com.google.api.client.auth.oauth2.BearerToken;
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+public class DriveRequestInitializerTest {
+
+    private static final String ACCESS_TOKEN = "test-access-token";
+
+    @Test
+    void initialize_RetriesServerErrorsWithBackoff() throws IOException {
+        // Arrange
+        ScriptedTransport transport = new ScriptedTransport(503, 500, 200);
+        List<Long> sleeps = new ArrayList<>();
+
+        // Act
+        HttpResponse response = buildRequest(transport, sleeps).execute();
+
+        // Assert
+        assertEquals(200, response.getStatusCode());
+        assertEquals(3, transport.requests.size());
+        assertEquals(2, sleeps.size());
+        assertTrue(sleeps.stream().allMatch(sleep -> sleep > 0));
+    }
+
+    @Test
+    void initialize_RetriesRateLimitedRequests() throws IOException {
+        // Arrange
+        ScriptedTransport transport = new ScriptedTransport(429, 200);
+
+        // Act
+        HttpResponse response = buildRequest(transport, new ArrayList<>()).execute();
+
+        // Assert
+        assertEquals(200, response.getStatusCode());
+        assertEquals(2, transport.requests.size());
+    }
+
+    @Test
+    void initialize_DoesNotRetryClientErrors() throws IOException {
+        // Arrange
+        ScriptedTransport transport = new ScriptedTransport(404, 200);
+        HttpRequest request = buildRequest(transport, new ArrayList<>());
+
+        // Act & Assert
+        HttpResponseException exception = assertThrows(HttpResponseException.class, request::execute);
+        assertEquals(404, exception.getStatusCode());
+        assertEquals(1, transport.requests.size());
+    }
+
+    @Test
+    void initialize_AuthorizesEveryRequest() throws IOException {
+        // Arrange
+        ScriptedTransport transport = new ScriptedTransport(503, 200);
+
+        // Act
+        buildRequest(transport, new ArrayList<>()).execute();
+
+        // Assert
+        assertTrue(transport.requests.stream().allMatch(request ->
+                ("Bearer " + ACCESS_TOKEN).equals(request.getFirstHeaderValue("Authorization"))));
+    }
+
+    private static HttpRequest buildRequest(ScriptedTransport transport, List<Long> sleeps) throws IOException {
+        DriveRequestInitializer initializer = new DriveRequestInitializer(
+                new Credential(BearerToken.authorizationHeaderAccessMethod()).setAccessToken(ACCESS_TOKEN), 10, 60_000)
+                .setSleeper(sleeps::add);
+        return transport.createRequestFactory(initializer)
+                .buildGetRequest(new GenericUrl("https://www.googleapis.com/drive/v3/files"));
+    }
+
+    // Answers each request with the next status code of the script
+    private static class ScriptedTransport extends MockHttpTransport {
+
+        private final Deque<Integer> statusCodes;
+
+        private final List<MockLowLevelHttpRequest> requests = new ArrayList<>();
+
+        ScriptedTransport(Integer... statusCodes) {
+            this.statusCodes = new LinkedList<>(Arrays.asList(statusCodes));
+        }
+
+        @Override
+        public LowLevelHttpRequest buildRequest(String method, String url) {
+            MockLowLevelHttpRequest request = new MockLowLevelHttpRequest(url) {
+                @Override
+                public LowLevelHttpResponse execute() throws IOException {
+                    return new MockLowLevelHttpResponse().setStatusCode(statusCodes.pop());
+                }
+            };
+            requests.add(request);
+            return request;
+        }
+    }
+}
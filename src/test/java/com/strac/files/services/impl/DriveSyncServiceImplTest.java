@@ -0,0 +1,573 @@
+package com.strac.files.services.impl;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.Change;
+import com.google.api.services.drive.model.ChangeList;
+import com.google.api.services.drive.model.File;
+import com.google.api.services.drive.model.FileList;
+import com.google.api.services.drive.model.StartPageToken;
+import com.strac.files.cache.FileListingCache;
+import com.strac.files.models.DriveSyncState;
+import com.strac.files.models.FileMetadata;
+import com.strac.files.models.User;
+import com.strac.files.models.dto.FileSnapshot;
+import com.strac.files.models.repositories.DriveSyncStateRepository;
+import com.strac.files.models.repositories.FileRepository;
+import com.strac.files.models.repositories.UserRepository;
+import com.strac.files.services.DriveService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+
+@ExtendWith(MockitoExtension.class)
+public class DriveSyncServiceImplTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private DriveSyncStateRepository syncStateRepository;
+
+    @Mock
+    private DriveService driveService;
+
+    @Mock
+    private FileListingCache listingCache;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private TaskExecutor syncExecutor;
+
+    @Mock
+    private Drive drive;
+
+    @Mock
+    private Drive.Files driveFiles;
+
+    @Mock
+    private Drive.Files.List filesList;
+
+    @Mock
+    private Drive.Changes driveChanges;
+
+    @Mock
+    private Drive.Changes.List changesList;
+
+    @Mock
+    private Drive.Changes.GetStartPageToken getStartPageToken;
+
+    @InjectMocks
+    private DriveSyncServiceImpl syncService;
+
+    private static final String USER_ID = "test-user-id";
+    private static final long USER_PK = 42L;
+    private User testUser;
+
+    @BeforeEach
+    void setUp() {
+        testUser = new User();
+        testUser.setId(USER_PK);
+        testUser.setOauthId(USER_ID);
+        ReflectionTestUtils.setField(syncService, "softTtlSec", 15L);
+        ReflectionTestUtils.setField(syncService, "hardTtlSec", 900L);
+        ReflectionTestUtils.setField(syncService, "staleWhileRevalidate", true);
+    }
+
+    @Test
+    void syncIfStale_WhenRecentlySynced_DoesNotCallDrive() throws IOException {
+        // Arrange
+        when(syncStateRepository.findLastSyncedAtByUserId(USER_ID)).thenReturn(Optional.of(LocalDateTime.now()));
+
+        // Act
+        syncService.syncIfStale(USER_ID);
+
+        // Assert
+        verify(driveService, never()).getDriveService(anyString());
+    }
+
+    @Test
+    void isFresh_OnlyWithinSoftTtl() {
+        // Arrange
+        when(syncStateRepository.findLastSyncedAtByUserId(USER_ID))
+                .thenReturn(Optional.of(LocalDateTime.now()))
+                .thenReturn(Optional.of(LocalDateTime.now().minusMinutes(1)))
+                .thenReturn(Optional.empty());
+
+        // Act & Assert
+        assertTrue(syncService.isFresh(USER_ID));
+        assertFalse(syncService.isFresh(USER_ID));
+        assertFalse(syncService.isFresh(USER_ID));
+    }
+
+    @Test
+    void syncIfStale_WhenPastSoftTtl_ReturnsAndSyncsInBackground() throws IOException {
+        // Arrange
+        DriveSyncState state = syncState("token-1", LocalDateTime.now().minusMinutes(1));
+        when(syncStateRepository.findLastSyncedAtByUserId(USER_ID)).thenReturn(Optional.of(state.getLastSyncedAt()));
+
+        // Act
+        syncService.syncIfStale(USER_ID);
+
+        // Assert
+        ArgumentCaptor<Runnable> taskCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(syncExecutor).execute(taskCaptor.capture());
+        verify(driveService, never()).getDriveService(anyString());
+
+        // The queued task runs the sync
+        when(syncStateRepository.findByUser_OauthId(USER_ID)).thenReturn(Optional.of(state));
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        mockEmptyChanges("token-1");
+        taskCaptor.getValue().run();
+        verify(changesList).execute();
+    }
+
+    @Test
+    void syncIfStale_RepeatedBeforeTheQueuedSyncRuns_QueuesOneSync() throws IOException {
+        // Arrange
+        DriveSyncState state = syncState("token-1", LocalDateTime.now().minusMinutes(1));
+        when(syncStateRepository.findLastSyncedAtByUserId(USER_ID)).thenReturn(Optional.of(state.getLastSyncedAt()));
+
+        // Act
+        syncService.syncIfStale(USER_ID);
+        syncService.syncIfStale(USER_ID);
+        syncService.syncIfStale(USER_ID);
+
+        // Assert
+        ArgumentCaptor<Runnable> taskCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(syncExecutor, times(1)).execute(taskCaptor.capture());
+
+        // Once the queued sync has run, a later stale request queues a new one
+        when(syncStateRepository.findByUser_OauthId(USER_ID)).thenReturn(Optional.of(state));
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        mockEmptyChanges("token-1");
+        taskCaptor.getValue().run();
+        syncService.syncIfStale(USER_ID);
+        verify(syncExecutor, times(2)).execute(any(Runnable.class));
+    }
+
+    @Test
+    void syncIfStale_WhenTheSyncQueueIsFull_QueuesAgainOnTheNextRequest() throws IOException {
+        // Arrange
+        when(syncStateRepository.findLastSyncedAtByUserId(USER_ID))
+                .thenReturn(Optional.of(LocalDateTime.now().minusMinutes(1)));
+        doThrow(new TaskRejectedException("full")).when(syncExecutor).execute(any(Runnable.class));
+
+        // Act
+        syncService.syncIfStale(USER_ID);
+        syncService.syncIfStale(USER_ID);
+
+        // Assert
+        verify(syncExecutor, times(2)).execute(any(Runnable.class));
+    }
+
+    @Test
+    void syncIfStale_WhenPastSoftTtlWithoutStaleWhileRevalidate_SyncsBeforeReturning() throws IOException {
+        // Arrange
+        ReflectionTestUtils.setField(syncService, "staleWhileRevalidate", false);
+        DriveSyncState state = syncState("token-1", LocalDateTime.now().minusMinutes(1));
+        when(syncStateRepository.findLastSyncedAtByUserId(USER_ID)).thenReturn(Optional.of(state.getLastSyncedAt()));
+        when(syncStateRepository.findByUser_OauthId(USER_ID)).thenReturn(Optional.of(state));
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        mockEmptyChanges("token-1");
+
+        // Act
+        syncService.syncIfStale(USER_ID);
+
+        // Assert
+        verify(changesList).execute();
+        verifyNoInteractions(syncExecutor);
+    }
+
+    @Test
+    void syncIfStale_WhenPastHardTtl_SyncsBeforeReturning() throws IOException {
+        // Arrange
+        DriveSyncState state = syncState("token-1", LocalDateTime.now().minusHours(1));
+        when(syncStateRepository.findLastSyncedAtByUserId(USER_ID)).thenReturn(Optional.of(state.getLastSyncedAt()));
+        when(syncStateRepository.findByUser_OauthId(USER_ID)).thenReturn(Optional.of(state));
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        mockEmptyChanges("token-1");
+
+        // Act
+        syncService.syncIfStale(USER_ID);
+
+        // Assert
+        verify(changesList).execute();
+        verifyNoInteractions(syncExecutor);
+    }
+
+    @Test
+    void syncIfStale_WhenNeverSynced_SyncsBeforeReturning() throws IOException {
+        // Arrange
+        when(syncStateRepository.findLastSyncedAtByUserId(USER_ID)).thenReturn(Optional.empty());
+        when(syncStateRepository.findByUser_OauthId(USER_ID)).thenReturn(Optional.empty());
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        mockStartPageToken("token-1");
+        mockFullListing();
+        when(userRepository.findByOauthId(USER_ID)).thenReturn(testUser);
+
+        // Act
+        syncService.syncIfStale(USER_ID);
+
+        // Assert
+        verify(filesList).execute();
+        verifyNoInteractions(syncExecutor);
+    }
+
+    @Test
+    void syncFiles_WithoutSyncState_ListsAllFilesAndStoresStartPageToken() throws IOException {
+        // Arrange
+        when(syncStateRepository.findByUser_OauthId(USER_ID)).thenReturn(Optional.empty());
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        mockStartPageToken("token-1");
+        mockFullListing(driveFile("drive-file-id", "first.txt"));
+        when(userRepository.findByOauthId(USER_ID)).thenReturn(testUser);
+
+        // Act
+        syncService.syncFiles(USER_ID);
+
+        // Assert
+        verify(fileRepository).upsertAll(eq(USER_PK), argThat(files -> files.size() == 1));
+        ArgumentCaptor<DriveSyncState> stateCaptor = ArgumentCaptor.forClass(DriveSyncState.class);
+        verify(syncStateRepository).save(stateCaptor.capture());
+        assertEquals("token-1", stateCaptor.getValue().getStartPageToken());
+        assertSame(testUser, stateCaptor.getValue().getUser());
+        assertNotNull(stateCaptor.getValue().getLastSyncedAt());
+    }
+
+    @Test
+    void syncFiles_WithoutSyncState_WalksEveryDrivePage() throws IOException {
+        // Arrange
+        when(syncStateRepository.findByUser_OauthId(USER_ID)).thenReturn(Optional.empty());
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        mockStartPageToken("token-1");
+        mockFullListing();
+        when(filesList.execute()).thenReturn(
+                new FileList().setFiles(Arrays.asList(driveFile("id-1", "first.txt"))).setNextPageToken("page-2"),
+                new FileList().setFiles(Arrays.asList(driveFile("id-2", "second.txt"))));
+        when(userRepository.findByOauthId(USER_ID)).thenReturn(testUser);
+
+        // Act
+        syncService.syncFiles(USER_ID);
+
+        // Assert
+        verify(filesList).setPageToken(null);
+        verify(filesList).setPageToken("page-2");
+        verify(filesList, times(2)).execute();
+        verify(fileRepository, times(2)).upsertAll(eq(USER_PK), argThat(files -> files.size() == 1));
+    }
+
+    @Test
+    void syncFiles_WithSyncState_AppliesOnlyChanges() throws IOException {
+        // Arrange
+        DriveSyncState state = syncState("token-1", LocalDateTime.now().minusMinutes(30));
+        when(syncStateRepository.findByUser_OauthId(USER_ID)).thenReturn(Optional.of(state));
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+
+        File modified = driveFile("modified-id", "renamed.txt");
+        Change modifiedChange = new Change().setFileId("modified-id").setRemoved(false).setFile(modified);
+        Change removedChange = new Change().setFileId("removed-id").setRemoved(true);
+
+        when(drive.changes()).thenReturn(driveChanges);
+        when(driveChanges.list("token-1")).thenReturn(changesList);
+        when(changesList.setPageSize(anyInt())).thenReturn(changesList);
+        when(changesList.setFields(anyString())).thenReturn(changesList);
+        when(changesList.execute()).thenReturn(new ChangeList()
+                .setChanges(Arrays.asList(modifiedChange, removedChange))
+                .setNewStartPageToken("token-2"));
+
+        // Act
+        syncService.syncFiles(USER_ID);
+
+        // Assert
+        verify(fileRepository).upsertAll(eq(USER_PK), argThat(files ->
+                files.size() == 1 && files.get(0).getFileName().equals("renamed.txt")));
+        verify(fileRepository).deleteAllByUserIdAndDriveFileIdIn(USER_PK, List.of("removed-id"));
+        verify(fileRepository, never()).findSnapshotsByUser_OauthId(anyString());
+        verify(drive, never()).files();
+        verify(listingCache).invalidate(USER_ID);
+        assertEquals("token-2", state.getStartPageToken());
+    }
+
+    @Test
+    void syncFiles_FullSyncWithNoDriveChanges_WritesNothing() throws IOException {
+        // Arrange
+        when(syncStateRepository.findByUser_OauthId(USER_ID)).thenReturn(Optional.empty());
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        mockStartPageToken("token-1");
+        mockFullListing(driveFile("same-id", "same.txt"));
+        when(userRepository.findByOauthId(USER_ID)).thenReturn(testUser);
+        when(fileRepository.findSnapshotsByUser_OauthId(USER_ID))
+                .thenReturn(List.of(snapshot("same-id", "same.txt")));
+
+        // Act
+        syncService.syncFiles(USER_ID);
+
+        // Assert
+        verify(fileRepository, never()).upsertAll(anyLong(), any());
+        verify(fileRepository, never()).deleteAllByUserIdAndDriveFileIdIn(anyLong(), any());
+        verify(listingCache, never()).invalidate(anyString());
+    }
+
+    @Test
+    void syncFiles_FullSync_UpsertsChangedFilesAndDeletesVanishedOnes() throws IOException {
+        // Arrange
+        when(syncStateRepository.findByUser_OauthId(USER_ID)).thenReturn(Optional.empty());
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        mockStartPageToken("token-1");
+        mockFullListing(driveFile("same-id", "same.txt"), driveFile("renamed-id", "new-name.txt"),
+                driveFile("new-id", "new.txt"));
+        when(userRepository.findByOauthId(USER_ID)).thenReturn(testUser);
+        when(fileRepository.findSnapshotsByUser_OauthId(USER_ID)).thenReturn(List.of(
+                snapshot("same-id", "same.txt"), snapshot("renamed-id", "old-name.txt"),
+                snapshot("vanished-id", "gone.txt")));
+
+        // Act
+        syncService.syncFiles(USER_ID);
+
+        // Assert
+        verify(fileRepository).upsertAll(eq(USER_PK), argThat(files -> files.size() == 2 &&
+                files.stream().map(FileMetadata::getDriveFileId).toList().containsAll(List.of("renamed-id", "new-id"))));
+        verify(fileRepository).deleteAllByUserIdAndDriveFileIdIn(USER_PK, List.of("vanished-id"));
+        verify(listingCache).invalidate(USER_ID);
+    }
+
+    @Test
+    void syncFiles_WhenNothingChanged_KeepsCachedListing() throws IOException {
+        // Arrange
+        DriveSyncState state = syncState("token-1", LocalDateTime.now().minusMinutes(30));
+        when(syncStateRepository.findByUser_OauthId(USER_ID)).thenReturn(Optional.of(state));
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        when(drive.changes()).thenReturn(driveChanges);
+        when(driveChanges.list("token-1")).thenReturn(changesList);
+        when(changesList.setPageSize(anyInt())).thenReturn(changesList);
+        when(changesList.setFields(anyString())).thenReturn(changesList);
+        when(changesList.execute()).thenReturn(new ChangeList()
+                .setChanges(Collections.emptyList())
+                .setNewStartPageToken("token-1"));
+
+        // Act
+        syncService.syncFiles(USER_ID);
+
+        // Assert
+        verifyNoInteractions(fileRepository, listingCache);
+        assertNotNull(state.getLastSyncedAt());
+    }
+
+    @Test
+    void syncFiles_WhenStartPageTokenExpired_FallsBackToFullSync() throws IOException {
+        // Arrange
+        DriveSyncState state = syncState("expired-token", LocalDateTime.now().minusDays(30));
+        when(syncStateRepository.findByUser_OauthId(USER_ID)).thenReturn(Optional.of(state));
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        when(drive.changes()).thenReturn(driveChanges);
+        when(driveChanges.list("expired-token")).thenReturn(changesList);
+        when(changesList.setPageSize(anyInt())).thenReturn(changesList);
+        when(changesList.setFields(anyString())).thenReturn(changesList);
+        when(changesList.execute()).thenThrow(new GoogleJsonResponseException(
+                new HttpResponseException.Builder(404, "Not Found", new HttpHeaders()), null));
+        mockStartPageToken("token-2");
+        mockFullListing(driveFile("drive-file-id", "first.txt"));
+        when(userRepository.findByOauthId(USER_ID)).thenReturn(testUser);
+
+        // Act
+        syncService.syncFiles(USER_ID);
+
+        // Assert
+        verify(fileRepository).upsertAll(eq(USER_PK), argThat(files -> files.size() == 1));
+        assertEquals("token-2", state.getStartPageToken());
+    }
+
+    @Test
+    void syncFiles_WhenSyncAlreadyRunning_WaitsForItInsteadOfSyncingAgain() throws Exception {
+        // Arrange
+        DriveSyncState state = syncState("token-1", LocalDateTime.now().minusMinutes(30));
+        when(syncStateRepository.findByUser_OauthId(USER_ID)).thenReturn(Optional.of(state));
+        CountDownLatch syncStarted = new CountDownLatch(1);
+        CountDownLatch releaseSync = new CountDownLatch(1);
+        when(driveService.getDriveService(USER_ID)).thenAnswer(invocation -> {
+            syncStarted.countDown();
+            releaseSync.await();
+            return drive;
+        });
+        mockEmptyChanges("token-1");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        // Act
+        Future<?> leader = executor.submit(() -> syncQuietly());
+        syncStarted.await();
+        Future<?> follower = executor.submit(() -> syncQuietly());
+        awaitWaitingCallers(1);
+        releaseSync.countDown();
+        leader.get(5, TimeUnit.SECONDS);
+        follower.get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        // Assert
+        verify(driveService, times(1)).getDriveService(USER_ID);
+        verify(changesList, times(1)).execute();
+    }
+
+    @Test
+    void syncFiles_WhenRunningSyncFails_WaitingCallersGetTheSameError() throws Exception {
+        // Arrange
+        CountDownLatch syncStarted = new CountDownLatch(1);
+        CountDownLatch releaseSync = new CountDownLatch(1);
+        when(driveService.getDriveService(USER_ID)).thenAnswer(invocation -> {
+            syncStarted.countDown();
+            releaseSync.await();
+            throw new IOException("Drive API error");
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        // Act
+        Future<?> leader = executor.submit(() -> syncQuietly());
+        syncStarted.await();
+        Future<?> follower = executor.submit(() -> syncQuietly());
+        awaitWaitingCallers(1);
+        releaseSync.countDown();
+
+        // Assert
+        ExecutionException leaderError = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        ExecutionException followerError = assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+        assertEquals("Drive API error", leaderError.getCause().getCause().getMessage());
+        assertSame(leaderError.getCause().getCause(), followerError.getCause().getCause());
+        verify(driveService, times(1)).getDriveService(USER_ID);
+        executor.shutdown();
+    }
+
+    private Void syncQuietly() {
+        try {
+            syncService.syncFiles(USER_ID);
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void awaitWaitingCallers(int count) throws InterruptedException {
+        Map<String, CompletableFuture<Void>> inFlightSyncs =
+                (Map<String, CompletableFuture<Void>>) ReflectionTestUtils.getField(syncService, "inFlightSyncs");
+        for (int i = 0; i < 500; i++) {
+            CompletableFuture<Void> sync = inFlightSyncs.get(USER_ID);
+            if (sync != null && sync.getNumberOfDependents() >= count) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("Callers did not wait for the running sync");
+    }
+
+    private void mockEmptyChanges(String token) throws IOException {
+        when(drive.changes()).thenReturn(driveChanges);
+        when(driveChanges.list(token)).thenReturn(changesList);
+        when(changesList.setPageSize(anyInt())).thenReturn(changesList);
+        when(changesList.setFields(anyString())).thenReturn(changesList);
+        when(changesList.execute()).thenReturn(new ChangeList()
+                .setChanges(Collections.emptyList())
+                .setNewStartPageToken(token));
+    }
+
+    private void mockStartPageToken(String token) throws IOException {
+        when(drive.changes()).thenReturn(driveChanges);
+        when(driveChanges.getStartPageToken()).thenReturn(getStartPageToken);
+        when(getStartPageToken.execute()).thenReturn(new StartPageToken().setStartPageToken(token));
+    }
+
+    private void mockFullListing(File... files) throws IOException {
+        when(drive.files()).thenReturn(driveFiles);
+        when(driveFiles.list()).thenReturn(filesList);
+        when(filesList.setQ(anyString())).thenReturn(filesList);
+        when(filesList.setPageSize(anyInt())).thenReturn(filesList);
+        when(filesList.setPageToken(any())).thenReturn(filesList);
+        when(filesList.setFields(anyString())).thenReturn(filesList);
+        when(filesList.execute()).thenReturn(new FileList().setFiles(Arrays.asList(files)));
+    }
+
+    private DriveSyncState syncState(String token, LocalDateTime lastSyncedAt) {
+        DriveSyncState state = new DriveSyncState();
+        state.setUser(testUser);
+        state.setStartPageToken(token);
+        state.setLastSyncedAt(lastSyncedAt);
+        return state;
+    }
+
+    private static FileSnapshot snapshot(String driveFileId, String fileName) {
+        return new FileSnapshot() {
+            public String getDriveFileId() {
+                return driveFileId;
+            }
+
+            public String getFileName() {
+                return fileName;
+            }
+
+            public String getMimeType() {
+                return "text/plain";
+            }
+
+            public LocalDateTime getModifiedTime() {
+                return null;
+            }
+
+            public Long getSize() {
+                return null;
+            }
+
+            public String getMd5Checksum() {
+                return null;
+            }
+
+            public Long getDriveVersion() {
+                return null;
+            }
+        };
+    }
+
+    private static File driveFile(String id, String name) {
+        return new File().setId(id).setName(name).setMimeType("text/plain").setOwnedByMe(true);
+    }
+}
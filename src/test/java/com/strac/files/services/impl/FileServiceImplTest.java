@@ -1,32 +1,91 @@
 package com.strac.files.services.impl;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.InputStreamContent;
+import com.google.api.client.util.DateTime;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.model.File;
-import com.google.api.services.drive.model.FileList;
+import com.strac.files.cache.ExportCache;
+import com.strac.files.cache.FileContentCache;
+import com.strac.files.cache.FileListingCache;
+import com.strac.files.cache.UploadJob;
+import com.strac.files.cache.UploadJobRegistry;
+import com.strac.files.exceptions.BadRequestException;
+import com.strac.files.exceptions.RecordNotFoundException;
+import com.strac.files.exceptions.UnauthorizedException;
 import com.strac.files.models.FileMetadata;
 import com.strac.files.models.User;
+import com.strac.files.models.dto.DeleteResultDTO;
+import com.strac.files.models.dto.FileListingRow;
 import com.strac.files.models.dto.FileMetadataDTO;
+import com.strac.files.models.dto.FilePageDTO;
+import com.strac.files.models.dto.FileQuery;
+import com.strac.files.models.dto.FileSort;
+import com.strac.files.models.dto.UploadJobDTO;
+import com.strac.files.models.dto.UploadResultDTO;
 import com.strac.files.models.repositories.FileRepository;
 import com.strac.files.models.repositories.UserRepository;
 import com.strac.files.services.DriveService;
+import com.strac.files.services.DriveSyncService;
+import com.strac.files.utils.CursorUtil;
+import com.strac.files.utils.TransferBudget;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.async.WebAsyncTask;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
@@ -47,13 +106,16 @@ public class FileServiceImplTest {
     private DriveService driveService;
 
     @Mock
-    private Drive drive;
+    private DriveSyncService driveSyncService;
 
     @Mock
-    private Drive.Files driveFiles;
+    private PlatformTransactionManager transactionManager;
 
     @Mock
-    private Drive.Files.List filesList;
+    private Drive drive;
+
+    @Mock
+    private Drive.Files driveFiles;
 
     @Mock
     private Drive.Files.Get filesGet;
@@ -64,76 +126,251 @@ public class FileServiceImplTest {
     @Mock
     private Drive.Files.Delete filesDelete;
 
+    @Mock
+    private BatchRequest batch;
+
+    @Mock
+    private MediaHttpUploader mediaUploader;
+
     @Mock
     private MultipartFile multipartFile;
 
     @Mock
     private HttpServletResponse response;
 
+    @Captor
+    private ArgumentCaptor<List<FileMetadata>> savedCaptor;
+
+    @Captor
+    private ArgumentCaptor<List<String>> deletedIds;
+
     @InjectMocks
     private FileServiceImpl fileService;
 
     private static final String USER_ID = "test-user-id";
+    private static final int PAGE_SIZE = 100;
+    private static final FileQuery ALL_FILES = new FileQuery();
     private User testUser;
+    private TransferBudget transferBudget;
+
+    @TempDir
+    private Path spoolDir;
 
     @BeforeEach
-    void setUp() {
+    void setUp() throws IOException {
         testUser = new User();
         testUser.setOauthId(USER_ID);
+        ReflectionTestUtils.setField(fileService, "defaultPageSize", PAGE_SIZE);
+        ReflectionTestUtils.setField(fileService, "maxPageSize", 1000);
+        ReflectionTestUtils.setField(fileService, "uploadChunkSizeMb", 8);
+        ReflectionTestUtils.setField(fileService, "uploadReadAheadMb", 1);
+        ReflectionTestUtils.setField(fileService, "maxFileSize", DataSize.ofMegabytes(1));
+        ReflectionTestUtils.setField(fileService, "maxRequestSize", DataSize.ofMegabytes(10));
+        ReflectionTestUtils.setField(fileService, "uploadReadAheadExecutor", new SimpleAsyncTaskExecutor());
+        ReflectionTestUtils.setField(fileService, "listingCache", new FileListingCache(1000, 60, new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(fileService, "objectMapper", new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(fileService, "uploadJobRegistry", new UploadJobRegistry(100, 60));
+        ReflectionTestUtils.setField(fileService, "uploadSpoolDir", spoolDir.toString());
+        transferBudget = new TransferBudget(64, 0, 5, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(fileService, "transferBudget", transferBudget);
+        ReflectionTestUtils.setField(fileService, "contentCache",
+                new FileContentCache(false, spoolDir.toString(), 1, 1, 0, new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(fileService, "exportCache", new ExportCache(1, new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(fileService, "driveDownloadExecutor", new SimpleAsyncTaskExecutor());
+        ReflectionTestUtils.setField(fileService, "downloadStreamingExecutor", new SimpleAsyncTaskExecutor());
+        ReflectionTestUtils.setField(fileService, "downloadTimeoutSec", 60L);
+        ReflectionTestUtils.setField(fileService, "zipMaxFiles", 3);
+        ReflectionTestUtils.setField(fileService, "zipParallelFetches", 2);
+        ReflectionTestUtils.setField(fileService, "zipBufferMb", 1);
+        ReflectionTestUtils.setField(fileService, "parallelDownloadThresholdMb", 64L);
+        ReflectionTestUtils.setField(fileService, "parallelDownloadPartMb", 1L);
+        ReflectionTestUtils.setField(fileService, "parallelDownloadFetches", 3);
+        ReflectionTestUtils.setField(fileService, "deleteMaxFiles", 150);
     }
 
     @Test
-    void listAllFilesByUserId_WhenCacheIsValid_ReturnsCachedFiles() throws IOException {
+    void listFilesByUserId_WhenCacheIsValid_ReturnsCachedFiles() throws IOException {
         // Arrange
-        FileMetadata cachedFile = new FileMetadata();
-        cachedFile.setUpdatedAt(LocalDateTime.now());
-        cachedFile.setFileName("test.txt");
-        List<FileMetadata> cachedFiles = Collections.singletonList(cachedFile);
+        List<FileListingRow> cachedFiles = Collections.singletonList(row(1L, "test.txt"));
 
-        when(fileRepository.findAllByUser_OauthId(USER_ID)).thenReturn(cachedFiles);
+        when(fileRepository.findPage(USER_ID, ALL_FILES, FileSort.NAME_ASC, null, PAGE_SIZE + 1))
+                .thenReturn(cachedFiles);
 
         // Act
-        List<FileMetadataDTO> result = fileService.listAllFilesByUserId(USER_ID);
+        FilePageDTO result = fileService.listFilesByUserId(USER_ID, ALL_FILES, null, null);
 
         // Assert
-        assertFalse(result.isEmpty());
-        assertEquals(1, result.size());
-        assertEquals("test.txt", result.get(0).getFileName());
+        assertEquals(1, result.getFiles().size());
+        assertEquals("test.txt", result.getFiles().get(0).getFileName());
+        assertNull(result.getNextCursor());
         verify(drive, never()).files();
     }
 
     @Test
-    void listAllFilesByUserId_WhenCacheIsStale_FetchesFromDrive() throws IOException {
+    void listFilesByUserId_ReadsPageInReadOnlyTransaction() throws IOException {
         // Arrange
-        FileMetadata staleFile = new FileMetadata();
-        staleFile.setUpdatedAt(LocalDateTime.now().minusMinutes(30));
-        List<FileMetadata> staleFiles = Collections.singletonList(staleFile);
+        when(fileRepository.findPage(USER_ID, ALL_FILES, FileSort.NAME_ASC, null, PAGE_SIZE + 1))
+                .thenReturn(Collections.singletonList(row(1L, "a.txt")));
 
-        when(fileRepository.findAllByUser_OauthId(USER_ID)).thenReturn(staleFiles);
-        when(driveService.getDriveService(anyString())).thenReturn(drive);
+        // Act
+        fileService.listFilesByUserId(USER_ID, ALL_FILES, null, null);
+
+        // Assert
+        verify(transactionManager).getTransaction(argThat(TransactionDefinition::isReadOnly));
+    }
+
+    @Test
+    void listFilesByUserId_SyncsWithDriveBeforeReadingCache() throws IOException {
+        // Arrange
+        FileListingRow syncedFile = row(1L, "updated.txt");
+
+        when(fileRepository.findPage(USER_ID, ALL_FILES, FileSort.NAME_ASC, null, PAGE_SIZE + 1))
+                .thenReturn(Collections.singletonList(syncedFile));
+
+        // Act
+        FilePageDTO result = fileService.listFilesByUserId(USER_ID, ALL_FILES, null, null);
+
+        // Assert
+        assertEquals(1, result.getFiles().size());
+        assertEquals("updated.txt", result.getFiles().get(0).getFileName());
+        InOrder inOrder = inOrder(driveSyncService, fileRepository);
+        inOrder.verify(driveSyncService).syncIfStale(USER_ID);
+        inOrder.verify(fileRepository).findPage(USER_ID, ALL_FILES, FileSort.NAME_ASC, null, PAGE_SIZE + 1);
+        verifyNoMoreInteractions(fileRepository);
+    }
+
+    @Test
+    void listFilesByUserId_WhenMoreRowsThanPageSize_ReturnsCursorForNextPage() throws IOException {
+        // Arrange
+        FileListingRow first = row(1L, "a.txt");
+        FileListingRow second = row(2L, "b.txt");
+        FileListingRow third = row(3L, "c.txt");
+        when(fileRepository.findPage(USER_ID, ALL_FILES, FileSort.NAME_ASC, null, 3))
+                .thenReturn(Arrays.asList(first, second, third));
+        when(fileRepository.findPage(USER_ID, ALL_FILES, FileSort.NAME_ASC, new CursorUtil.Cursor("b.txt", 2L), 3))
+                .thenReturn(Collections.singletonList(third));
+
+        // Act
+        FilePageDTO firstPage = fileService.listFilesByUserId(USER_ID, ALL_FILES, null, 2);
+        FilePageDTO secondPage = fileService.listFilesByUserId(USER_ID, ALL_FILES, firstPage.getNextCursor(), 2);
+
+        // Assert
+        assertEquals(2, firstPage.getFiles().size());
+        assertNotNull(firstPage.getNextCursor());
+        assertEquals(1, secondPage.getFiles().size());
+        assertEquals("c.txt", secondPage.getFiles().get(0).getFileName());
+        assertNull(secondPage.getNextCursor());
+    }
+
+    @Test
+    void listFilesByUserId_WhenPageIsCached_DoesNotQueryDatabaseAgain() throws IOException {
+        // Arrange
+        when(fileRepository.findPage(USER_ID, ALL_FILES, FileSort.NAME_ASC, null, PAGE_SIZE + 1))
+                .thenReturn(Collections.singletonList(row(1L, "a.txt")));
+
+        // Act
+        fileService.listFilesByUserId(USER_ID, ALL_FILES, null, null);
+        FilePageDTO result = fileService.listFilesByUserId(USER_ID, ALL_FILES, null, null);
+
+        // Assert
+        assertEquals("a.txt", result.getFiles().get(0).getFileName());
+        verify(driveSyncService, times(2)).syncIfStale(USER_ID);
+        verify(fileRepository, times(1)).findPage(USER_ID, ALL_FILES, FileSort.NAME_ASC, null, PAGE_SIZE + 1);
+    }
+
+    @Test
+    void deleteFileByDriveFileId_InvalidatesCachedListing() throws IOException {
+        // Arrange
+        when(fileRepository.findPage(USER_ID, ALL_FILES, FileSort.NAME_ASC, null, PAGE_SIZE + 1))
+                .thenReturn(Collections.singletonList(row(1L, "a.txt")))
+                .thenReturn(Collections.emptyList());
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
         when(drive.files()).thenReturn(driveFiles);
-        when(driveFiles.list()).thenReturn(filesList);
-        when(filesList.setQ(anyString())).thenReturn(filesList);
-        when(filesList.setFields(anyString())).thenReturn(filesList);
+        when(driveFiles.delete("file-id")).thenReturn(filesDelete);
 
-        File driveFile = new File();
-        driveFile.setId("drive-file-id");
-        driveFile.setName("updated.txt");
-        FileList fileList = new FileList();
-        fileList.setFiles(Collections.singletonList(driveFile));
+        // Act
+        fileService.listFilesByUserId(USER_ID, ALL_FILES, null, null);
+        fileService.deleteFileByDriveFileId(USER_ID, "file-id");
+        FilePageDTO result = fileService.listFilesByUserId(USER_ID, ALL_FILES, null, null);
 
-        when(filesList.execute()).thenReturn(fileList);
-        when(userRepository.findByOauthId(USER_ID)).thenReturn(testUser);
+        // Assert
+        assertTrue(result.getFiles().isEmpty());
+        verify(fileRepository, times(2)).findPage(USER_ID, ALL_FILES, FileSort.NAME_ASC, null, PAGE_SIZE + 1);
+    }
+
+    @Test
+    void listFilesByUserId_WithInvalidCursor_ThrowsBadRequest() {
+        assertThrows(BadRequestException.class, () -> fileService.listFilesByUserId(USER_ID, ALL_FILES, "not-a-cursor", 10));
+    }
+
+    @Test
+    void listFilesByUserId_WithFiltersAndSort_PagesOnTheSortColumn() throws IOException {
+        // Arrange
+        FileQuery query = new FileQuery("rep", null, "application/pdf", null, null, "-modified");
+        LocalDateTime modifiedTime = LocalDateTime.of(2026, 10, 1, 12, 30);
+        FileListingRow newest = row(7L, "report-2.pdf", modifiedTime.plusDays(1));
+        FileListingRow older = row(3L, "report-1.pdf", modifiedTime);
+        when(fileRepository.findPage(USER_ID, query, FileSort.MODIFIED_DESC, null, 2))
+                .thenReturn(Arrays.asList(newest, older));
+
+        // Act
+        FilePageDTO result = fileService.listFilesByUserId(USER_ID, query, null, 1);
+
+        // Assert
+        assertEquals(1, result.getFiles().size());
+        assertEquals("report-2.pdf", result.getFiles().get(0).getFileName());
+        assertEquals(new CursorUtil.Cursor(modifiedTime.plusDays(1).toString(), 7L),
+                CursorUtil.decode(result.getNextCursor()));
+    }
+
+    @Test
+    void listFilesByUserId_CachesEachQuerySeparately() throws IOException {
+        // Arrange
+        FileQuery pdfs = new FileQuery(null, null, "application/pdf", null, null, null);
+        when(fileRepository.findPage(USER_ID, ALL_FILES, FileSort.NAME_ASC, null, PAGE_SIZE + 1))
+                .thenReturn(Arrays.asList(row(1L, "a.txt"), row(2L, "b.pdf")));
+        when(fileRepository.findPage(USER_ID, pdfs, FileSort.NAME_ASC, null, PAGE_SIZE + 1))
+                .thenReturn(Collections.singletonList(row(2L, "b.pdf")));
 
         // Act
-        List<FileMetadataDTO> result = fileService.listAllFilesByUserId(USER_ID);
+        FilePageDTO all = fileService.listFilesByUserId(USER_ID, ALL_FILES, null, null);
+        FilePageDTO filtered = fileService.listFilesByUserId(USER_ID, pdfs, null, null);
 
         // Assert
-        assertFalse(result.isEmpty());
-        assertEquals(1, result.size());
-        assertEquals("updated.txt", result.get(0).getFileName());
-        verify(fileRepository).deleteAllByUser_OauthId(USER_ID);
-        verify(fileRepository).saveAll(any());
+        assertEquals(2, all.getFiles().size());
+        assertEquals(1, filtered.getFiles().size());
+    }
+
+    @Test
+    void listFilesByUserId_WithUnknownSort_ThrowsBadRequest() {
+        FileQuery query = new FileQuery(null, null, null, null, null, "size");
+
+        assertThrows(BadRequestException.class, () -> fileService.listFilesByUserId(USER_ID, query, null, null));
+        verify(fileRepository, never()).findPage(anyString(), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void streamFilesByUserId_WritesOneJsonObjectPerLine() throws IOException {
+        // Arrange
+        AtomicBoolean streamClosed = new AtomicBoolean();
+        Stream<FileMetadataDTO> files = Stream.of(
+                new FileMetadataDTO("id-1", "a.txt", "text/plain", LocalDateTime.now(), null),
+                new FileMetadataDTO("id-2", "b.txt", "text/plain", LocalDateTime.now(), null))
+                .onClose(() -> streamClosed.set(true));
+        when(fileRepository.streamAllByUser_OauthId(USER_ID)).thenReturn(files);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        // Act
+        fileService.streamFilesByUserId(USER_ID).writeTo(output);
+
+        // Assert
+        String[] lines = output.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(Arrays.stream(lines).allMatch(line -> line.startsWith("{") && line.endsWith("}")));
+        assertTrue(lines[0].contains("\"fileName\":\"a.txt\""));
+        assertTrue(lines[1].contains("\"driveFileId\":\"id-2\""));
+        assertTrue(streamClosed.get());
+        verify(driveSyncService).syncIfStale(USER_ID);
     }
 
     @Test
@@ -143,6 +380,7 @@ public class FileServiceImplTest {
         when(drive.files()).thenReturn(driveFiles);
         when(driveFiles.create(any(File.class), any())).thenReturn(filesCreate);
         when(filesCreate.setFields(anyString())).thenReturn(filesCreate);
+        when(filesCreate.getMediaHttpUploader()).thenReturn(mediaUploader);
 
         File uploadedFile = new File();
         uploadedFile.setId("new-file-id");
@@ -155,12 +393,330 @@ public class FileServiceImplTest {
         when(userRepository.findByOauthId(USER_ID)).thenReturn(testUser);
 
         // Act
-        FileMetadataDTO result = fileService.uploadFile(multipartFile, USER_ID);
+        FileMetadataDTO result = fileService.uploadFile(multipartFile, USER_ID, null);
 
         // Assert
         assertNotNull(result);
         assertEquals("test-upload.txt", result.getFileName());
-        verify(fileRepository).save(any(FileMetadata.class));
+        verify(fileRepository).upsertAll(anyLong(), argThat(saved -> saved.size() == 1));
+    }
+
+    @Test
+    void uploadFile_StoresChecksumAndSizeOfSentContent() throws IOException {
+        // Arrange
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        when(drive.files()).thenReturn(driveFiles);
+        when(driveFiles.create(any(File.class), any())).thenAnswer(invocation -> {
+            InputStreamContent content = invocation.getArgument(1);
+            content.getInputStream().readAllBytes();
+            return filesCreate;
+        });
+        when(filesCreate.setFields(anyString())).thenReturn(filesCreate);
+        when(filesCreate.getMediaHttpUploader()).thenReturn(mediaUploader);
+        when(filesCreate.execute()).thenReturn(new File().setId("new-file-id").setName("test-upload.txt"));
+        when(multipartFile.getOriginalFilename()).thenReturn("test-upload.txt");
+        when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream("test content".getBytes()));
+        when(userRepository.findByOauthId(USER_ID)).thenReturn(testUser);
+
+        // Act
+        fileService.uploadFile(multipartFile, USER_ID, null);
+
+        // Assert
+        verify(fileRepository).upsertAll(anyLong(), savedCaptor.capture());
+        assertEquals("9473fdd0d880a43c21b7778d34872157", savedCaptor.getValue().get(0).getMd5Checksum());
+        assertEquals(12L, savedCaptor.getValue().get(0).getSize());
+    }
+
+    @Test
+    void uploadFile_WithContentMd5OfExistingFile_ReturnsItWithoutUploading() throws IOException {
+        // Arrange
+        FileMetadata existing = new FileMetadata();
+        existing.setDriveFileId("existing-id");
+        existing.setFileName("report.pdf");
+        when(multipartFile.getSize()).thenReturn(12L);
+        when(fileRepository.findFirstByUser_OauthIdAndMd5ChecksumAndSize(
+                USER_ID, "9473fdd0d880a43c21b7778d34872157", 12L)).thenReturn(existing);
+
+        // Act
+        FileMetadataDTO result = fileService.uploadFile(multipartFile, USER_ID, "9473FDD0D880A43C21B7778D34872157");
+
+        // Assert
+        assertEquals("existing-id", result.getDriveFileId());
+        verifyNoInteractions(driveService);
+        verify(fileRepository, never()).upsertAll(anyLong(), any());
+    }
+
+    @Test
+    void uploadFile_WithMalformedContentMd5_ThrowsBadRequest() {
+        assertThrows(BadRequestException.class, () -> fileService.uploadFile(multipartFile, USER_ID, "not-a-hash"));
+        verifyNoInteractions(driveService);
+    }
+
+    @Test
+    void findFileByContent_WhenNoFileMatches_ThrowsRecordNotFound() {
+        when(fileRepository.findFirstByUser_OauthIdAndMd5ChecksumAndSize(
+                USER_ID, "9473fdd0d880a43c21b7778d34872157", 12L)).thenReturn(null);
+
+        assertThrows(RecordNotFoundException.class, () ->
+                fileService.findFileByContent(USER_ID, "9473fdd0d880a43c21b7778d34872157", 12L));
+    }
+
+    @Test
+    void uploadFile_UsesResumableUploadInChunks() throws IOException {
+        // Arrange
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        when(drive.files()).thenReturn(driveFiles);
+        ArgumentCaptor<InputStreamContent> contentCaptor = ArgumentCaptor.forClass(InputStreamContent.class);
+        when(driveFiles.create(any(File.class), contentCaptor.capture())).thenReturn(filesCreate);
+        when(filesCreate.setFields(anyString())).thenReturn(filesCreate);
+        when(filesCreate.getMediaHttpUploader()).thenReturn(mediaUploader);
+        when(filesCreate.execute()).thenReturn(new File().setId("new-file-id").setName("large.bin"));
+
+        when(multipartFile.getOriginalFilename()).thenReturn("large.bin");
+        when(multipartFile.getContentType()).thenReturn("application/octet-stream");
+        when(multipartFile.getSize()).thenReturn(20L * 1024 * 1024);
+        when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[0]));
+        when(userRepository.findByOauthId(USER_ID)).thenReturn(testUser);
+
+        // Act
+        fileService.uploadFile(multipartFile, USER_ID, null);
+
+        // Assert
+        assertEquals(20L * 1024 * 1024, contentCaptor.getValue().getLength());
+        verify(mediaUploader).setDirectUploadEnabled(false);
+        verify(mediaUploader).setChunkSize(8 * 1024 * 1024);
+        verify(mediaUploader).setProgressListener(any());
+    }
+
+    @Test
+    void streamUpload_SendsEveryFilePartToDrive() throws IOException {
+        // Arrange
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        when(drive.files()).thenReturn(driveFiles);
+        List<String> uploadedContents = new ArrayList<>();
+        when(driveFiles.create(any(File.class), any())).thenAnswer(invocation -> {
+            InputStreamContent content = invocation.getArgument(1);
+            uploadedContents.add(new String(content.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+            File metadata = invocation.getArgument(0);
+            when(filesCreate.execute()).thenReturn(new File().setId("id-" + metadata.getName()).setName(metadata.getName()));
+            return filesCreate;
+        });
+        when(filesCreate.setFields(anyString())).thenReturn(filesCreate);
+        when(filesCreate.getMediaHttpUploader()).thenReturn(mediaUploader);
+        when(userRepository.findByOauthId(USER_ID)).thenReturn(testUser);
+
+        MockHttpServletRequest request = multipartRequest(
+                "--boundary\r\nContent-Disposition: form-data; name=\"note\"\r\n\r\nignored\r\n" +
+                "--boundary\r\nContent-Disposition: form-data; name=\"files\"; filename=\"a.txt\"\r\n" +
+                "Content-Type: text/plain\r\n\r\nfirst file\r\n" +
+                "--boundary\r\nContent-Disposition: form-data; name=\"files\"; filename=\"b.txt\"\r\n" +
+                "Content-Type: text/plain\r\n\r\nsecond file\r\n" +
+                "--boundary--\r\n");
+
+        // Act
+        List<FileMetadataDTO> result = fileService.streamUpload(request, USER_ID);
+
+        // Assert
+        assertEquals(2, result.size());
+        assertEquals("a.txt", result.get(0).getFileName());
+        assertEquals("b.txt", result.get(1).getFileName());
+        assertEquals(List.of("first file", "second file"), uploadedContents);
+        verify(fileRepository, times(2)).upsertAll(anyLong(), any());
+    }
+
+    @Test
+    void streamUpload_LargerThanTheBudget_OnlyHoldsItsBuffers() throws IOException {
+        // Arrange
+        TransferBudget budget = new TransferBudget(32, 0, 5, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(fileService, "transferBudget", budget);
+        List<Double> usedDuringUpload = new ArrayList<>();
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        when(drive.files()).thenReturn(driveFiles);
+        when(driveFiles.create(any(File.class), any())).thenAnswer(invocation -> {
+            usedDuringUpload.add(budget.usedBytes());
+            // A small transfer running at the same time still gets room
+            budget.acquire(16 * 1024 * 1024, TransferBudget.Direction.DOWNLOAD).close();
+            return filesCreate;
+        });
+        when(filesCreate.setFields(anyString())).thenReturn(filesCreate);
+        when(filesCreate.getMediaHttpUploader()).thenReturn(mediaUploader);
+        when(filesCreate.execute()).thenReturn(new File().setId("id-a").setName("a.txt"));
+        when(userRepository.findByOauthId(USER_ID)).thenReturn(testUser);
+        HttpServletRequest request = spy(multipartRequest(
+                "--boundary\r\nContent-Disposition: form-data; name=\"files\"; filename=\"a.txt\"\r\n" +
+                "Content-Type: text/plain\r\n\r\nfirst file\r\n--boundary--\r\n"));
+        lenient().doReturn(10L * 1024 * 1024 * 1024).when(request).getContentLengthLong();
+
+        // Act
+        fileService.streamUpload(request, USER_ID);
+
+        // Assert
+        assertEquals(List.of(9.0 * 1024 * 1024), usedDuringUpload);
+        assertEquals(0, budget.usedBytes());
+    }
+
+    @Test
+    void uploadFiles_ReturnsResultPerFileAndSavesUploadsInOneBatch() throws IOException {
+        // Arrange
+        ReflectionTestUtils.setField(fileService, "driveUploadExecutor", (TaskExecutor) Runnable::run);
+        ReflectionTestUtils.setField(fileService, "batchConcurrencyPerUser", 2);
+        stubDriveCreate();
+        when(filesCreate.execute())
+                .thenReturn(new File().setId("id-a").setName("a.txt"))
+                .thenThrow(new IOException("Drive unavailable"))
+                .thenReturn(new File().setId("id-c").setName("c.txt"));
+        testUser.setId(7L);
+        when(userRepository.findByOauthId(USER_ID)).thenReturn(testUser);
+        List<MultipartFile> files = List.of(
+                new MockMultipartFile("files", "a.txt", "text/plain", "a".getBytes()),
+                new MockMultipartFile("files", "b.txt", "text/plain", "b".getBytes()),
+                new MockMultipartFile("files", "c.txt", "text/plain", "c".getBytes()));
+
+        // Act
+        List<UploadResultDTO> results = fileService.uploadFiles(files, USER_ID);
+
+        // Assert
+        assertEquals(List.of("a.txt", "b.txt", "c.txt"), results.stream().map(UploadResultDTO::getFileName).toList());
+        assertEquals("id-a", results.get(0).getFile().getDriveFileId());
+        assertNull(results.get(1).getFile());
+        assertEquals("Upload failed: Drive unavailable", results.get(1).getError());
+        assertEquals("id-c", results.get(2).getFile().getDriveFileId());
+
+        verify(fileRepository, times(1)).upsertAll(eq(7L), savedCaptor.capture());
+        assertEquals(List.of("id-a", "id-c"), savedCaptor.getValue().stream().map(FileMetadata::getDriveFileId).toList());
+        verify(fileRepository, never()).save(any(FileMetadata.class));
+    }
+
+    @Test
+    void uploadFiles_LimitsParallelUploadsPerUser() throws IOException {
+        // Arrange
+        ReflectionTestUtils.setField(fileService, "driveUploadExecutor", new SimpleAsyncTaskExecutor());
+        ReflectionTestUtils.setField(fileService, "batchConcurrencyPerUser", 2);
+        stubDriveCreate();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(filesCreate.execute()).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            inFlight.decrementAndGet();
+            return new File().setId("id").setName("file.txt");
+        });
+        when(userRepository.findByOauthId(USER_ID)).thenReturn(testUser);
+        List<MultipartFile> files = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            files.add(new MockMultipartFile("files", "file.txt", "text/plain", "content".getBytes()));
+        }
+
+        // Act
+        List<UploadResultDTO> results = fileService.uploadFiles(files, USER_ID);
+
+        // Assert
+        assertEquals(6, results.size());
+        assertTrue(results.stream().allMatch(result -> result.getError() == null));
+        assertTrue(maxInFlight.get() <= 2, "at most 2 uploads should run at once, saw " + maxInFlight.get());
+    }
+
+    @Test
+    void uploadFiles_WithoutFiles_ThrowsBadRequest() {
+        assertThrows(BadRequestException.class, () -> fileService.uploadFiles(List.of(), USER_ID));
+        verifyNoInteractions(driveService);
+    }
+
+    @Test
+    void submitUploadJob_ReturnsQueuedJobAndUploadsInBackground() throws IOException {
+        // Arrange
+        List<Runnable> queued = new ArrayList<>();
+        ReflectionTestUtils.setField(fileService, "uploadJobExecutor", (TaskExecutor) queued::add);
+        stubDriveCreate();
+        when(filesCreate.execute()).thenReturn(new File().setId("new-file-id").setName("big.bin"));
+        when(userRepository.findByOauthId(USER_ID)).thenReturn(testUser);
+
+        TransferBudget.Permit requestPermit = uploadPermit(1024);
+
+        // Act
+        UploadJobDTO accepted = fileService.submitUploadJob(
+                new MockMultipartFile("file", "big.bin", "application/octet-stream", new byte[1024]), USER_ID,
+                requestPermit);
+        requestPermit.close();
+        long spooledFiles = Files.list(spoolDir).count();
+        double heldByQueuedJob = transferBudget.usedBytes();
+        queued.get(0).run();
+
+        // Assert
+        assertEquals(UploadJob.Status.QUEUED, accepted.getStatus());
+        assertEquals(1024, accepted.getTotalBytes());
+        assertEquals(1, spooledFiles);
+        assertEquals(1024, heldByQueuedJob);
+        assertEquals(0, transferBudget.usedBytes());
+        verifyNoMoreInteractions(driveFiles);
+
+        UploadJobDTO finished = fileService.getUploadJob(USER_ID, accepted.getJobId());
+        assertEquals(UploadJob.Status.COMPLETED, finished.getStatus());
+        assertEquals("new-file-id", finished.getFile().getDriveFileId());
+        assertEquals(1024, finished.getBytesUploaded());
+        verify(fileRepository).upsertAll(anyLong(), argThat(saved -> saved.size() == 1));
+        assertEquals(0, Files.list(spoolDir).count());
+    }
+
+    @Test
+    void submitUploadJob_WhenDriveFails_MarksJobFailed() throws IOException {
+        // Arrange
+        ReflectionTestUtils.setField(fileService, "uploadJobExecutor", (TaskExecutor) Runnable::run);
+        stubDriveCreate();
+        when(filesCreate.execute()).thenThrow(new IOException("Drive unavailable"));
+
+        // Act
+        UploadJobDTO accepted = fileService.submitUploadJob(
+                new MockMultipartFile("file", "big.bin", "application/octet-stream", new byte[10]), USER_ID,
+                uploadPermit(10));
+
+        // Assert
+        UploadJobDTO finished = fileService.getUploadJob(USER_ID, accepted.getJobId());
+        assertEquals(UploadJob.Status.FAILED, finished.getStatus());
+        assertEquals("Upload failed: Drive unavailable", finished.getError());
+        verify(fileRepository, never()).upsertAll(anyLong(), any());
+        assertEquals(0, Files.list(spoolDir).count());
+    }
+
+    @Test
+    void submitUploadJob_WhenPoolIsFull_RejectsAndCleansUp() throws IOException {
+        ReflectionTestUtils.setField(fileService, "uploadJobExecutor", (TaskExecutor) task -> {
+            throw new TaskRejectedException("full");
+        });
+
+        assertThrows(TaskRejectedException.class, () -> fileService.submitUploadJob(
+                new MockMultipartFile("file", "big.bin", "application/octet-stream", new byte[10]), USER_ID,
+                uploadPermit(10)));
+        assertEquals(0, Files.list(spoolDir).count());
+        assertEquals(0, transferBudget.usedBytes());
+        verifyNoInteractions(driveService);
+    }
+
+    @Test
+    void getUploadJob_OfAnotherUser_ThrowsRecordNotFound() throws IOException {
+        ReflectionTestUtils.setField(fileService, "uploadJobExecutor", (TaskExecutor) task -> { });
+        UploadJobDTO accepted = fileService.submitUploadJob(
+                new MockMultipartFile("file", "big.bin", "application/octet-stream", new byte[10]), USER_ID,
+                uploadPermit(10));
+
+        assertThrows(RecordNotFoundException.class, () -> fileService.getUploadJob("other-user", accepted.getJobId()));
+    }
+
+    @Test
+    void streamUpload_WithoutFileParts_ThrowsBadRequest() {
+        MockHttpServletRequest request = multipartRequest(
+                "--boundary\r\nContent-Disposition: form-data; name=\"note\"\r\n\r\nno files\r\n--boundary--\r\n");
+
+        assertThrows(BadRequestException.class, () -> fileService.streamUpload(request, USER_ID));
+        verifyNoInteractions(driveService);
+    }
+
+    @Test
+    void streamUpload_WithoutMultipartBody_ThrowsBadRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/google-drive/upload/stream");
+        request.setContentType("application/octet-stream");
+
+        assertThrows(BadRequestException.class, () -> fileService.streamUpload(request, USER_ID));
     }
 
     @Test
@@ -169,6 +725,7 @@ public class FileServiceImplTest {
         when(driveService.getDriveService(anyString())).thenReturn(drive);
         when(drive.files()).thenReturn(driveFiles);
         when(driveFiles.get(anyString())).thenReturn(filesGet);
+        when(filesGet.setFields(anyString())).thenReturn(filesGet);
 
         File driveFile = new File();
         driveFile.setName("download.txt");
@@ -179,7 +736,7 @@ public class FileServiceImplTest {
         when(response.getOutputStream()).thenReturn(outputStream);
 
         // Act
-        fileService.downloadFile("file-id", USER_ID, response);
+        download(new MockHttpServletRequest(), response);
 
         // Assert
         verify(response).setContentType("text/plain");
@@ -187,6 +744,433 @@ public class FileServiceImplTest {
         verify(outputStream).flush();
     }
 
+    @Test
+    void downloadFile_SendsContentFromTheReturnedTaskAndThenReleasesTheBudget() throws Exception {
+        // Arrange
+        TransferBudget budget = new TransferBudget(64, 0, 5, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(fileService, "transferBudget", budget);
+        stubDownload(new File().setName("video.mp4").setMimeType("video/mp4").setSize(1000L));
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+        // Act
+        WebAsyncTask<Void> task = fileService.downloadFile("file-id", USER_ID, new MockHttpServletRequest(),
+                servletResponse);
+
+        // Assert
+        verify(filesGet, never()).executeMediaAndDownloadTo(any());
+        assertEquals(1000, servletResponse.getContentLengthLong());
+        assertTrue(budget.usedBytes() > 0);
+
+        task.getCallable().call();
+        verify(filesGet).executeMediaAndDownloadTo(any());
+        assertEquals(0, budget.usedBytes());
+    }
+
+    @Test
+    void downloadFile_LargerThanTheBudget_DoesNotBlockSmallTransfers() throws IOException {
+        // Arrange
+        TransferBudget budget = new TransferBudget(64, 0, 5, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(fileService, "transferBudget", budget);
+        stubDownload(new File().setName("video.mp4").setMimeType("video/mp4").setSize(10L * 1024 * 1024 * 1024));
+
+        // Act
+        WebAsyncTask<Void> task = fileService.downloadFile("file-id", USER_ID, new MockHttpServletRequest(),
+                new MockHttpServletResponse());
+
+        // Assert
+        assertNotNull(task);
+        assertEquals(3.0 * 1024 * 1024, budget.usedBytes());
+        assertDoesNotThrow(() -> budget.acquire(32 * 1024 * 1024, TransferBudget.Direction.UPLOAD).close());
+    }
+
+    @Test
+    void downloadFile_WhenNotModified_ReturnsNoTask() throws IOException {
+        stubDownload(new File().setName("video.mp4").setMimeType("video/mp4").setSize(1000L)
+                .setMd5Checksum("9e107d9d372bb6826bd81d3542a419d6"));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download/file-id");
+        request.addHeader("If-None-Match", "\"9e107d9d372bb6826bd81d3542a419d6\"");
+
+        assertNull(fileService.downloadFile("file-id", USER_ID, request, new MockHttpServletResponse()));
+    }
+
+    @Test
+    void downloadFile_WithRange_ForwardsRangeAndAnswersPartialContent() throws IOException {
+        // Arrange
+        HttpHeaders driveHeaders = stubDownload(new File().setName("video.mp4").setMimeType("video/mp4").setSize(1000L));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Range", "bytes=100-199");
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+        // Act
+        download(request, servletResponse);
+
+        // Assert
+        assertEquals(206, servletResponse.getStatus());
+        assertEquals("bytes 100-199/1000", servletResponse.getHeader("Content-Range"));
+        assertEquals("bytes", servletResponse.getHeader("Accept-Ranges"));
+        assertEquals(100, servletResponse.getContentLengthLong());
+        assertEquals("bytes=100-199", driveHeaders.getRange());
+    }
+
+    @Test
+    void downloadFile_WithSuffixRange_SendsTheLastBytes() throws IOException {
+        HttpHeaders driveHeaders = stubDownload(new File().setName("video.mp4").setMimeType("video/mp4").setSize(1000L));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Range", "bytes=-300");
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+        download(request, servletResponse);
+
+        assertEquals(206, servletResponse.getStatus());
+        assertEquals("bytes 700-999/1000", servletResponse.getHeader("Content-Range"));
+        assertEquals("bytes=700-999", driveHeaders.getRange());
+    }
+
+    @Test
+    void downloadFile_WhenIfRangeIsStale_SendsWholeFile() throws IOException {
+        // Arrange
+        HttpHeaders driveHeaders = stubDownload(new File().setName("video.mp4").setMimeType("video/mp4").setSize(1000L)
+                .setModifiedTime(new DateTime("2024-12-25T10:00:00Z")));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Range", "bytes=100-199");
+        request.addHeader("If-Range", "Tue, 24 Dec 2024 10:00:00 GMT");
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+        // Act
+        download(request, servletResponse);
+
+        // Assert
+        assertEquals(200, servletResponse.getStatus());
+        assertEquals(1000, servletResponse.getContentLengthLong());
+        assertNull(servletResponse.getHeader("Content-Range"));
+        assertNull(driveHeaders.getRange());
+    }
+
+    @Test
+    void downloadFile_WhenIfRangeMatches_SendsRange() throws IOException {
+        HttpHeaders driveHeaders = stubDownload(new File().setName("video.mp4").setMimeType("video/mp4").setSize(1000L)
+                .setModifiedTime(new DateTime("2024-12-25T10:00:00.250Z")));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Range", "bytes=100-");
+        request.addHeader("If-Range", "Wed, 25 Dec 2024 10:00:00 GMT");
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+        download(request, servletResponse);
+
+        assertEquals(206, servletResponse.getStatus());
+        assertEquals("bytes=100-999", driveHeaders.getRange());
+    }
+
+    @Test
+    void downloadFile_WithUnsatisfiableRange_Answers416() throws IOException {
+        // Arrange
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        when(drive.files()).thenReturn(driveFiles);
+        when(driveFiles.get("file-id")).thenReturn(filesGet);
+        when(filesGet.setFields(anyString())).thenReturn(filesGet);
+        when(filesGet.execute()).thenReturn(new File().setName("video.mp4").setMimeType("video/mp4").setSize(1000L));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Range", "bytes=5000-");
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+        // Act
+        download(request, servletResponse);
+
+        // Assert
+        assertEquals(416, servletResponse.getStatus());
+        assertEquals("bytes */1000", servletResponse.getHeader("Content-Range"));
+        verify(filesGet, never()).executeMediaAndDownloadTo(any());
+    }
+
+    @Test
+    void downloadFile_SendsETagAndLastModified() throws IOException {
+        // Arrange
+        stubDownload(new File().setName("video.mp4").setMimeType("video/mp4").setSize(1000L)
+                .setMd5Checksum("9e107d9d372bb6826bd81d3542a419d6").setVersion(7L)
+                .setModifiedTime(new DateTime("2024-12-25T10:00:00Z")));
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+        // Act
+        download(new MockHttpServletRequest("GET", "/download/file-id"),
+                servletResponse);
+
+        // Assert
+        assertEquals(200, servletResponse.getStatus());
+        assertEquals("\"9e107d9d372bb6826bd81d3542a419d6\"", servletResponse.getHeader("ETag"));
+        assertEquals("Wed, 25 Dec 2024 10:00:00 GMT", servletResponse.getHeader("Last-Modified"));
+    }
+
+    @Test
+    void downloadFile_WithCurrentETagAndFreshMetadata_Answers304WithoutCallingDrive() throws IOException {
+        // Arrange
+        when(driveSyncService.isFresh(USER_ID)).thenReturn(true);
+        when(fileRepository.findByUser_OauthIdAndDriveFileId(USER_ID, "file-id")).thenReturn(storedFile());
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download/file-id");
+        request.addHeader("If-None-Match", "\"9e107d9d372bb6826bd81d3542a419d6\"");
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+        // Act
+        download(request, servletResponse);
+
+        // Assert
+        assertEquals(304, servletResponse.getStatus());
+        assertEquals("\"9e107d9d372bb6826bd81d3542a419d6\"", servletResponse.getHeader("ETag"));
+        verify(driveService, never()).getDriveService(anyString());
+    }
+
+    @Test
+    void downloadFile_WithIfModifiedSinceAndFreshMetadata_Answers304() throws IOException {
+        when(driveSyncService.isFresh(USER_ID)).thenReturn(true);
+        when(fileRepository.findByUser_OauthIdAndDriveFileId(USER_ID, "file-id")).thenReturn(storedFile());
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download/file-id");
+        request.addHeader("If-Modified-Since", "Wed, 25 Dec 2024 10:00:00 GMT");
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+        download(request, servletResponse);
+
+        assertEquals(304, servletResponse.getStatus());
+        verify(driveService, never()).getDriveService(anyString());
+    }
+
+    @Test
+    void downloadFile_WhenDriveCredentialsFail_LeavesTheBudgetUntouched() throws IOException {
+        // Arrange
+        TransferBudget budget = new TransferBudget(64, 0, 5, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(fileService, "transferBudget", budget);
+        when(driveSyncService.isFresh(USER_ID)).thenReturn(true);
+        when(fileRepository.findByUser_OauthIdAndDriveFileId(USER_ID, "file-id")).thenReturn(storedFile());
+        when(driveService.getDriveService(USER_ID)).thenThrow(new UnauthorizedException("Token refresh failed"));
+
+        // Act & Assert
+        assertThrows(UnauthorizedException.class, () -> fileService.downloadFile("file-id", USER_ID,
+                new MockHttpServletRequest(), new MockHttpServletResponse()));
+        assertEquals(0, budget.usedBytes());
+        assertDoesNotThrow(() -> budget.acquire(64 * 1024 * 1024, TransferBudget.Direction.DOWNLOAD).close());
+    }
+
+    @Test
+    void downloadFile_WithFreshMetadata_OnlyDownloadsTheContent() throws IOException {
+        // Arrange
+        HttpHeaders driveHeaders = new HttpHeaders();
+        when(driveSyncService.isFresh(USER_ID)).thenReturn(true);
+        when(fileRepository.findByUser_OauthIdAndDriveFileId(USER_ID, "file-id")).thenReturn(storedFile());
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        when(drive.files()).thenReturn(driveFiles);
+        when(driveFiles.get("file-id")).thenReturn(filesGet);
+        when(filesGet.getRequestHeaders()).thenReturn(driveHeaders);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download/file-id");
+        request.addHeader("If-None-Match", "\"0000000000000000000000000000000f\"");
+        request.addHeader("Range", "bytes=0-99");
+        request.addHeader("If-Range", "\"9e107d9d372bb6826bd81d3542a419d6\"");
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+        // Act
+        download(request, servletResponse);
+
+        // Assert
+        assertEquals(206, servletResponse.getStatus());
+        assertEquals("bytes=0-99", driveHeaders.getRange());
+        assertEquals("video/mp4", servletResponse.getContentType());
+        verify(filesGet, never()).setFields(anyString());
+        verify(filesGet).executeMediaAndDownloadTo(any());
+    }
+
+    @Test
+    void downloadFile_WithStaleMetadata_AsksDrive() throws IOException {
+        // Arrange
+        stubDownload(new File().setName("video.mp4").setMimeType("video/mp4").setSize(1000L)
+                .setMd5Checksum("0123456789abcdef0123456789abcdef"));
+        when(driveSyncService.isFresh(USER_ID)).thenReturn(false);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download/file-id");
+        request.addHeader("If-None-Match", "\"9e107d9d372bb6826bd81d3542a419d6\"");
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+        // Act
+        download(request, servletResponse);
+
+        // Assert
+        assertEquals(200, servletResponse.getStatus());
+        verify(fileRepository, never()).findByUser_OauthIdAndDriveFileId(anyString(), anyString());
+        verify(filesGet).executeMediaAndDownloadTo(any());
+    }
+
+    @Test
+    void downloadFile_WithContentCache_SendsRepeatDownloadsFromDisk() throws IOException {
+        // Arrange
+        ReflectionTestUtils.setField(fileService, "contentCache", new FileContentCache(true,
+                spoolDir.resolve("content").toString(), 1, 1, 0, new SimpleMeterRegistry()));
+        stubDownload(new File().setName("notes.txt").setMimeType("text/plain").setSize(10L).setVersion(7L));
+        doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(0).write("0123456789".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(filesGet).executeMediaAndDownloadTo(any());
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        MockHttpServletResponse second = new MockHttpServletResponse();
+        MockHttpServletRequest ranged = new MockHttpServletRequest("GET", "/download/file-id");
+        ranged.addHeader("Range", "bytes=4-");
+        MockHttpServletResponse third = new MockHttpServletResponse();
+
+        // Act
+        download(new MockHttpServletRequest("GET", "/download/file-id"), first);
+        download(new MockHttpServletRequest("GET", "/download/file-id"), second);
+        download(ranged, third);
+
+        // Assert
+        verify(filesGet, times(1)).executeMediaAndDownloadTo(any());
+        assertEquals("0123456789", first.getContentAsString());
+        assertEquals("0123456789", second.getContentAsString());
+        assertEquals("text/plain", second.getContentType());
+        assertEquals(10, second.getContentLengthLong());
+        assertEquals(206, third.getStatus());
+        assertEquals("456789", third.getContentAsString());
+    }
+
+    @Test
+    void downloadFile_WhenLargerThanThreshold_FetchesRangesInParallel() throws IOException {
+        // Arrange
+        ReflectionTestUtils.setField(fileService, "parallelDownloadThresholdMb", 2L);
+        byte[] content = new byte[5 * 1024 * 1024 + 7];
+        new Random(42).nextBytes(content);
+        FileMetadata stored = storedFile();
+        stored.setSize((long) content.length);
+        when(driveSyncService.isFresh(USER_ID)).thenReturn(true);
+        when(fileRepository.findByUser_OauthIdAndDriveFileId(USER_ID, "file-id")).thenReturn(stored);
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        when(drive.files()).thenReturn(driveFiles);
+        List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+        when(driveFiles.get("file-id")).thenAnswer(invocation -> rangedGet(content, ranges));
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+        // Act
+        download(new MockHttpServletRequest("GET", "/download/file-id"),
+                servletResponse);
+
+        // Assert
+        assertArrayEquals(content, servletResponse.getContentAsByteArray());
+        assertEquals(6, ranges.size());
+        assertTrue(ranges.contains("bytes=5242880-5242886"));
+    }
+
+    @Test
+    void downloadFile_WhenFileIsAGoogleDoc_ThrowsBadRequest() throws IOException {
+        stubDownload(new File().setName("Notes").setMimeType("application/vnd.google-apps.document"));
+
+        assertThrows(BadRequestException.class, () -> fileService.downloadFile("file-id", USER_ID,
+                new MockHttpServletRequest(), new MockHttpServletResponse()));
+        verify(filesGet, never()).executeMediaAndDownloadTo(any());
+    }
+
+    @Test
+    void exportFile_ConvertsOnceAndServesRepeatExportsFromCache() throws IOException {
+        // Arrange
+        stubDownload(new File().setName("Notes").setMimeType("application/vnd.google-apps.document").setVersion(5L));
+        Drive.Files.Export export = mock(Drive.Files.Export.class);
+        when(driveFiles.export("file-id", "application/pdf")).thenReturn(export);
+        doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(0).write("%PDF".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(export).executeMediaAndDownloadTo(any());
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        MockHttpServletResponse second = new MockHttpServletResponse();
+
+        // Act
+        fileService.exportFile("file-id", "application/pdf", USER_ID, first);
+        fileService.exportFile("file-id", "application/pdf", USER_ID, second);
+
+        // Assert
+        verify(export, times(1)).executeMediaAndDownloadTo(any());
+        assertEquals("%PDF", second.getContentAsString());
+        assertEquals("application/pdf", second.getContentType());
+        assertEquals("attachment; filename=\"Notes.pdf\"", second.getHeader("Content-Disposition"));
+    }
+
+    @Test
+    void exportFile_WithFreshMetadataAndCachedExport_DoesNotCallDrive() throws IOException {
+        // Arrange
+        FileMetadata stored = storedFile();
+        stored.setMimeType("application/vnd.google-apps.spreadsheet");
+        when(driveSyncService.isFresh(USER_ID)).thenReturn(true);
+        when(fileRepository.findByUser_OauthIdAndDriveFileId(USER_ID, "file-id")).thenReturn(stored);
+        ExportCache exportCache = new ExportCache(1, new SimpleMeterRegistry());
+        exportCache.get(new ExportCache.ExportKey("file-id", 7, "text/csv"), () -> "a,b".getBytes());
+        ReflectionTestUtils.setField(fileService, "exportCache", exportCache);
+        MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+
+        // Act
+        fileService.exportFile("file-id", "text/csv", USER_ID, servletResponse);
+
+        // Assert
+        assertEquals("a,b", servletResponse.getContentAsString());
+        verify(driveService, never()).getDriveService(anyString());
+    }
+
+    @Test
+    void exportFile_WhenFileIsNotAGoogleDoc_ThrowsBadRequest() throws IOException {
+        stubDownload(new File().setName("video.mp4").setMimeType("video/mp4").setVersion(5L));
+
+        assertThrows(BadRequestException.class, () -> fileService.exportFile("file-id", "application/pdf",
+                USER_ID, new MockHttpServletResponse()));
+        verify(driveFiles, never()).export(anyString(), anyString());
+    }
+
+    @Test
+    void downloadZip_WritesEntriesInRequestOrder() throws IOException {
+        // Arrange
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        when(drive.files()).thenReturn(driveFiles);
+        when(driveSyncService.isFresh(USER_ID)).thenReturn(true);
+        FileMetadata first = new FileMetadata();
+        first.setDriveFileId("file-1");
+        first.setFileName("report.pdf");
+        FileMetadata second = new FileMetadata();
+        second.setDriveFileId("file-2");
+        second.setFileName("report.pdf");
+        when(fileRepository.findByUser_OauthIdAndDriveFileIdIn(USER_ID, List.of("file-1", "file-2", "file-3")))
+                .thenReturn(List.of(second, first));
+        stubMedia("file-1", "first");
+        stubMedia("file-2", "second");
+        Drive.Files.Get unstored = stubMedia("file-3", "third");
+        when(unstored.setFields("name")).thenReturn(unstored);
+        when(unstored.execute()).thenReturn(new File().setName("notes/today.txt"));
+
+        // Act
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        fileService.downloadZip(List.of("file-1", "file-2", "file-3"), USER_ID).writeTo(archive);
+
+        // Assert
+        assertEquals(List.of("report.pdf=first", "report (1).pdf=second", "notes_today.txt=third"),
+                readZip(archive.toByteArray()));
+    }
+
+    @Test
+    void downloadZip_WhenAFileIsMissing_ListsItInsteadOfFailing() throws IOException {
+        // Arrange
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        when(drive.files()).thenReturn(driveFiles);
+        Drive.Files.Get found = stubMedia("file-1", "first");
+        when(found.setFields("name")).thenReturn(found);
+        when(found.execute()).thenReturn(new File().setName("a.txt"));
+        Drive.Files.Get missing = mock(Drive.Files.Get.class);
+        when(driveFiles.get("file-2")).thenReturn(missing);
+        when(missing.setFields("name")).thenReturn(missing);
+        when(missing.execute()).thenThrow(
+                new HttpResponseException.Builder(404, "Not Found", new HttpHeaders()).build());
+
+        // Act
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        fileService.downloadZip(List.of("file-1", "file-2"), USER_ID).writeTo(archive);
+
+        // Assert
+        assertEquals(List.of("a.txt=first", "download-errors.txt=file-2: not found"), readZip(archive.toByteArray()));
+    }
+
+    @Test
+    void downloadZip_WithTooManyFiles_ThrowsBadRequest() {
+        assertThrows(BadRequestException.class,
+                () -> fileService.downloadZip(List.of("1", "2", "3", "4"), USER_ID));
+        assertThrows(BadRequestException.class, () -> fileService.downloadZip(List.of(), USER_ID));
+    }
+
     @Test
     void deleteFileByDriveFileId_Success() throws IOException {
         // Arrange
@@ -194,7 +1178,7 @@ public class FileServiceImplTest {
         when(drive.files()).thenReturn(driveFiles);
         when(driveFiles.delete(anyString())).thenReturn(filesDelete);
         FileMetadata existingFile = new FileMetadata();
-        when(fileRepository.findByDriveFileId("file-id")).thenReturn(existingFile);
+        when(fileRepository.findByUser_OauthIdAndDriveFileId(USER_ID, "file-id")).thenReturn(existingFile);
 
         // Act
         fileService.deleteFileByDriveFileId(USER_ID, "file-id");
@@ -212,7 +1196,7 @@ public class FileServiceImplTest {
         when(driveFiles.delete("file-id")).thenReturn(filesDelete);
         doNothing().when(filesDelete).execute();  // Changed this line
 
-        when(fileRepository.findByDriveFileId("file-id")).thenReturn(null);
+        when(fileRepository.findByUser_OauthIdAndDriveFileId(USER_ID, "file-id")).thenReturn(null);
 
         // Act
         fileService.deleteFileByDriveFileId(USER_ID, "file-id");
@@ -223,18 +1207,77 @@ public class FileServiceImplTest {
     }
 
     @Test
-    void listAllFilesByUserId_WhenDriveThrowsException_PropagatesException() throws IOException {
+    void deleteFiles_SendsDeletesInBatchesOf100AndRemovesRowsInOneStatement() throws IOException {
+        // Arrange
+        List<String> fileIds = new ArrayList<>();
+        for (int i = 0; i < 101; i++) {
+            fileIds.add("file-" + i);
+        }
+        List<JsonBatchCallback<Void>> queued = stubBatchDeletes();
+        doAnswer(invocation -> {
+            for (int i = 0; i < queued.size(); i++) {
+                if (i == 1) {
+                    queued.get(i).onFailure(driveError(403, "Forbidden"), null);
+                } else if (i == 2) {
+                    queued.get(i).onFailure(driveError(404, "Not found"), null);
+                } else {
+                    queued.get(i).onSuccess(null, null);
+                }
+            }
+            queued.clear();
+            return null;
+        }).when(batch).execute();
+        when(userRepository.findByOauthId(USER_ID)).thenReturn(testUser);
+
+        // Act
+        List<DeleteResultDTO> results = fileService.deleteFiles(fileIds, USER_ID);
+
+        // Assert
+        assertEquals(101, results.size());
+        assertEquals(fileIds, results.stream().map(DeleteResultDTO::getDriveFileId).toList());
+        assertFalse(results.get(1).isDeleted());
+        assertEquals("Delete failed: Forbidden", results.get(1).getError());
+        assertTrue(results.get(2).isDeleted());
+        assertTrue(results.get(100).isDeleted());
+        verify(drive, times(2)).batch();
+        verify(batch, times(2)).execute();
+        verify(fileRepository).deleteAllByUserIdAndDriveFileIdIn(eq(testUser.getId()), deletedIds.capture());
+        assertEquals(100, deletedIds.getValue().size());
+        assertFalse(deletedIds.getValue().contains("file-1"));
+        assertTrue(deletedIds.getValue().contains("file-2"));
+    }
+
+    @Test
+    void deleteFiles_WhenBatchRequestFails_ReportsEveryFileAsFailed() throws IOException {
         // Arrange
-        when(fileRepository.findAllByUser_OauthId(USER_ID)).thenReturn(Collections.emptyList());
-        when(driveService.getDriveService(USER_ID)).thenReturn(drive);  // Add this
-        when(drive.files()).thenReturn(driveFiles);  // Add this
-        when(driveFiles.list()).thenReturn(filesList);
-        when(filesList.setQ(anyString())).thenReturn(filesList);
-        when(filesList.setFields(anyString())).thenReturn(filesList);
-        when(filesList.execute()).thenThrow(new IOException("Drive API error"));
+        stubBatchDeletes();
+        doThrow(new IOException("Connection reset")).when(batch).execute();
+
+        // Act
+        List<DeleteResultDTO> results = fileService.deleteFiles(List.of("file-1", "file-2", "file-1"), USER_ID);
+
+        // Assert
+        assertEquals(2, results.size());
+        assertTrue(results.stream().noneMatch(DeleteResultDTO::isDeleted));
+        assertEquals("Delete failed: Connection reset", results.get(0).getError());
+        verify(fileRepository, never()).deleteAllByUserIdAndDriveFileIdIn(anyLong(), any());
+    }
+
+    @Test
+    void deleteFiles_WithNoOrTooManyFiles_ThrowsBadRequest() {
+        assertThrows(BadRequestException.class, () -> fileService.deleteFiles(List.of(), USER_ID));
+        assertThrows(BadRequestException.class,
+                () -> fileService.deleteFiles(Collections.nCopies(151, "file-id"), USER_ID));
+    }
+
+    @Test
+    void listFilesByUserId_WhenDriveThrowsException_PropagatesException() throws IOException {
+        // Arrange
+        doThrow(new IOException("Drive API error")).when(driveSyncService).syncIfStale(USER_ID);
 
         // Act & Assert
-        assertThrows(IOException.class, () -> fileService.listAllFilesByUserId(USER_ID));
+        assertThrows(IOException.class, () -> fileService.listFilesByUserId(USER_ID, ALL_FILES, null, null));
+        verify(fileRepository, never()).findPage(anyString(), any(), any(), any(), anyInt());
     }
 
     @Test
@@ -243,6 +1286,125 @@ public class FileServiceImplTest {
         when(multipartFile.getInputStream()).thenThrow(new IOException("Failed to read file"));
 
         // Act & Assert
-        assertThrows(IOException.class, () -> fileService.uploadFile(multipartFile, USER_ID));
+        assertThrows(IOException.class, () -> fileService.uploadFile(multipartFile, USER_ID, null));
+    }
+
+    // Returns the headers of the media request, to check what was asked of Drive
+    private Drive.Files.Get stubMedia(String fileId, String content) throws IOException {
+        Drive.Files.Get get = mock(Drive.Files.Get.class);
+        when(driveFiles.get(fileId)).thenReturn(get);
+        when(get.executeMediaAsInputStream())
+                .thenReturn(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        return get;
+    }
+
+    // A Drive get that sends the bytes of content in the range set on its request headers
+    private static Drive.Files.Get rangedGet(byte[] content, List<String> ranges) throws IOException {
+        Drive.Files.Get get = mock(Drive.Files.Get.class);
+        HttpHeaders headers = new HttpHeaders();
+        when(get.getRequestHeaders()).thenReturn(headers);
+        when(get.executeMediaAsInputStream()).thenAnswer(invocation -> {
+            ranges.add(headers.getRange());
+            String[] bounds = headers.getRange().substring("bytes=".length()).split("-");
+            int from = Integer.parseInt(bounds[0]);
+            return new ByteArrayInputStream(content, from, Integer.parseInt(bounds[1]) - from + 1);
+        });
+        return get;
+    }
+
+    // Each entry of the archive as name=content
+    private static List<String> readZip(byte[] archive) throws IOException {
+        List<String> entries = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                entries.add(entry.getName() + "=" + new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return entries;
+    }
+
+    // Download file-id the way the servlet container would, running the returned task if there is one
+    private void download(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        WebAsyncTask<Void> task = fileService.downloadFile("file-id", USER_ID, request, response);
+        if (task == null) {
+            return;
+        }
+        try {
+            task.getCallable().call();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static FileMetadata storedFile() {
+        FileMetadata stored = new FileMetadata();
+        stored.setDriveFileId("file-id");
+        stored.setFileName("video.mp4");
+        stored.setMimeType("video/mp4");
+        stored.setSize(1000L);
+        stored.setMd5Checksum("9e107d9d372bb6826bd81d3542a419d6");
+        stored.setDriveVersion(7L);
+        stored.setModifiedTime(LocalDateTime.of(2024, 12, 25, 10, 0));
+        return stored;
+    }
+
+    private HttpHeaders stubDownload(File metadata) throws IOException {
+        HttpHeaders driveHeaders = new HttpHeaders();
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        when(drive.files()).thenReturn(driveFiles);
+        when(driveFiles.get("file-id")).thenReturn(filesGet);
+        when(filesGet.setFields(anyString())).thenReturn(filesGet);
+        when(filesGet.execute()).thenReturn(metadata);
+        lenient().when(filesGet.getRequestHeaders()).thenReturn(driveHeaders);
+        return driveHeaders;
+    }
+
+    private void stubDriveCreate() throws IOException {
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        when(drive.files()).thenReturn(driveFiles);
+        when(driveFiles.create(any(File.class), any())).thenReturn(filesCreate);
+        when(filesCreate.setFields(anyString())).thenReturn(filesCreate);
+        when(filesCreate.getMediaHttpUploader()).thenReturn(mediaUploader);
+    }
+
+    private static MockHttpServletRequest multipartRequest(String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/google-drive/upload/stream");
+        request.setContentType("multipart/form-data; boundary=boundary");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    private static FileListingRow row(long id, String fileName) {
+        return row(id, fileName, null);
+    }
+
+    private static FileListingRow row(long id, String fileName, LocalDateTime modifiedTime) {
+        return new FileListingRow(id, "id-" + id, fileName, "text/plain", LocalDateTime.now(), modifiedTime);
+    }
+
+    // The share of the budget UploadAdmissionInterceptor takes for a request before its body is read
+    private TransferBudget.Permit uploadPermit(long bytes) throws IOException {
+        return transferBudget.acquire(bytes, TransferBudget.Direction.UPLOAD);
+    }
+
+    // Returns the callbacks of the deletes queued since the batch last ran
+    private List<JsonBatchCallback<Void>> stubBatchDeletes() throws IOException {
+        List<JsonBatchCallback<Void>> queued = new ArrayList<>();
+        when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+        when(drive.batch()).thenReturn(batch);
+        when(drive.files()).thenReturn(driveFiles);
+        when(driveFiles.delete(anyString())).thenReturn(filesDelete);
+        doAnswer(invocation -> queued.add(invocation.getArgument(1)))
+                .when(filesDelete).queue(eq(batch), any());
+        return queued;
+    }
+
+    private static GoogleJsonError driveError(int code, String message) {
+        GoogleJsonError error = new GoogleJsonError();
+        error.setCode(code);
+        error.setMessage(message);
+        return error;
     }
-}
\ No newline at end of file
+}
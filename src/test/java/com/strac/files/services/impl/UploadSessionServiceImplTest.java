@@ -0,0 +1,276 @@
+package com.strac.files.services.impl;
+
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.drive.Drive;
+import com.strac.files.cache.FileListingCache;
+import com.strac.files.exceptions.BadRequestException;
+import com.strac.files.exceptions.RecordNotFoundException;
+import com.strac.files.exceptions.TooManyRequestsException;
+import com.strac.files.models.FileMetadata;
+import com.strac.files.models.UploadSession;
+import com.strac.files.models.User;
+import com.strac.files.models.dto.UploadSessionDTO;
+import com.strac.files.models.dto.UploadSessionRequest;
+import com.strac.files.models.repositories.FileRepository;
+import com.strac.files.models.repositories.UploadSessionRepository;
+import com.strac.files.models.repositories.UserRepository;
+import com.strac.files.services.DriveService;
+import com.strac.files.utils.TransferBudget;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+@ExtendWith(MockitoExtension.class)
+public class UploadSessionServiceImplTest {
+
+    private static final String USER_ID = "test-user-id";
+    private static final String SESSION_ID = "session-1";
+    private static final String SESSION_URI = "https://www.googleapis.com/upload/drive/v3/files?upload_id=abc";
+    private static final int MB = 1024 * 1024;
+
+    @Mock
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private FileRepository fileRepository;
+
+    @Mock
+    private DriveService driveService;
+
+    @Mock
+    private FileListingCache listingCache;
+
+    @InjectMocks
+    private UploadSessionServiceImpl uploadSessionService;
+
+    private ScriptedTransport transport;
+    private TransferBudget transferBudget;
+    private User testUser;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ReflectionTestUtils.setField(uploadSessionService, "uploadChunkSizeMb", 1);
+        transferBudget = new TransferBudget(4, 0, 5, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(uploadSessionService, "transferBudget", transferBudget);
+        transport = new ScriptedTransport();
+        Drive drive = new Drive.Builder(transport, JacksonFactory.getDefaultInstance(), null).build();
+        lenient().when(driveService.getDriveService(USER_ID)).thenReturn(drive);
+
+        testUser = new User();
+        testUser.setId(7L);
+        testUser.setOauthId(USER_ID);
+        lenient().when(userRepository.findByOauthId(USER_ID)).thenReturn(testUser);
+    }
+
+    @Test
+    void createSession_StoresDriveSessionUri() throws IOException {
+        // Arrange
+        transport.respond(new MockLowLevelHttpResponse().setStatusCode(200).addHeader("Location", SESSION_URI));
+
+        // Act
+        UploadSessionDTO result = uploadSessionService.createSession(USER_ID,
+                new UploadSessionRequest("big.bin", "application/octet-stream", 3L * MB));
+
+        // Assert
+        MockLowLevelHttpRequest initiate = transport.requests.get(0);
+        assertTrue(initiate.getUrl().startsWith("https://www.googleapis.com/upload/drive/v3/files?"));
+        assertTrue(initiate.getUrl().contains("uploadType=resumable"));
+        assertEquals(String.valueOf(3L * MB), initiate.getFirstHeaderValue("X-Upload-Content-Length"));
+
+        ArgumentCaptor<UploadSession> sessionCaptor = ArgumentCaptor.forClass(UploadSession.class);
+        verify(uploadSessionRepository).save(sessionCaptor.capture());
+        assertEquals(SESSION_URI, sessionCaptor.getValue().getDriveSessionUri());
+        assertEquals(UploadSession.Status.ACTIVE, result.getStatus());
+        assertEquals(0, result.getCommittedOffset());
+        assertNotNull(result.getSessionId());
+    }
+
+    @Test
+    void createSession_WithoutSize_ThrowsBadRequest() {
+        assertThrows(BadRequestException.class, () -> uploadSessionService.createSession(USER_ID,
+                new UploadSessionRequest("big.bin", null, 0)));
+        assertTrue(transport.requests.isEmpty());
+    }
+
+    @Test
+    void uploadToSession_SendsChunksAndCompletesTheFile() throws IOException {
+        // Arrange
+        UploadSession session = activeSession(MB, 2L * MB + 10);
+        transport.respond(new MockLowLevelHttpResponse().setStatusCode(308).addHeader("Range", "bytes=0-" + (2 * MB - 1)));
+        transport.respond(new MockLowLevelHttpResponse().setStatusCode(200).setContentType("application/json")
+                .setContent("{\"id\": \"drive-file-id\", \"name\": \"big.bin\", \"mimeType\": \"application/octet-stream\"}"));
+
+        // Act
+        UploadSessionDTO result = uploadSessionService.uploadToSession(USER_ID, SESSION_ID, MB,
+                new ByteArrayInputStream(new byte[MB + 10]));
+
+        // Assert
+        assertEquals(List.of("bytes " + MB + "-" + (2 * MB - 1) + "/" + (2 * MB + 10),
+                        "bytes " + 2 * MB + "-" + (2 * MB + 9) + "/" + (2 * MB + 10)),
+                transport.requests.stream().map(request -> request.getFirstHeaderValue("Content-Range")).toList());
+        assertEquals(UploadSession.Status.COMPLETED, result.getStatus());
+        assertEquals("drive-file-id", result.getDriveFileId());
+        assertEquals(2L * MB + 10, session.getCommittedOffset());
+        verify(uploadSessionRepository, times(2)).save(session);
+        verify(fileRepository).upsertAll(eq(7L), argThat((List<FileMetadata> files) ->
+                files.size() == 1 && "drive-file-id".equals(files.get(0).getDriveFileId())));
+        verify(listingCache).invalidate(USER_ID);
+        assertEquals(0, transferBudget.usedBytes());
+    }
+
+    @Test
+    void uploadToSession_WhenTransferBudgetIsUsedUp_ThrowsTooManyRequests() throws IOException {
+        // Arrange
+        activeSession(0, 2L * MB);
+        transferBudget.acquire(4L * MB, TransferBudget.Direction.DOWNLOAD);
+
+        // Act & Assert
+        TooManyRequestsException exception = assertThrows(TooManyRequestsException.class,
+                () -> uploadSessionService.uploadToSession(USER_ID, SESSION_ID, 0,
+                        new ByteArrayInputStream(new byte[2 * MB])));
+        assertEquals(5, exception.getRetryAfterSeconds());
+        assertTrue(transport.requests.isEmpty());
+    }
+
+    @Test
+    void uploadToSession_WhenDriveKeepsLessThanSent_StopsAtCommittedOffset() throws IOException {
+        // Arrange
+        activeSession(0, 4L * MB);
+        transport.respond(new MockLowLevelHttpResponse().setStatusCode(308).addHeader("Range", "bytes=0-" + (MB / 2 - 1)));
+
+        // Act
+        UploadSessionDTO result = uploadSessionService.uploadToSession(USER_ID, SESSION_ID, 0,
+                new ByteArrayInputStream(new byte[2 * MB]));
+
+        // Assert
+        assertEquals(1, transport.requests.size());
+        assertEquals(UploadSession.Status.ACTIVE, result.getStatus());
+        assertEquals(MB / 2, result.getCommittedOffset());
+    }
+
+    @Test
+    void uploadToSession_WhenChunkFails_RecordsOffsetFromDriveAndRethrows() throws IOException {
+        // Arrange
+        UploadSession session = activeSession(0, 2L * MB);
+        transport.respond(new MockLowLevelHttpResponse().setStatusCode(503));
+        transport.respond(new MockLowLevelHttpResponse().setStatusCode(308).addHeader("Range", "bytes=0-99"));
+
+        // Act & Assert
+        assertThrows(IOException.class, () -> uploadSessionService.uploadToSession(USER_ID, SESSION_ID, 0,
+                new ByteArrayInputStream(new byte[2 * MB])));
+        assertEquals(2, transport.requests.size());
+        assertEquals("bytes */" + 2 * MB, transport.requests.get(1).getFirstHeaderValue("Content-Range"));
+        assertEquals(100, session.getCommittedOffset());
+        verify(uploadSessionRepository).save(session);
+    }
+
+    @Test
+    void uploadToSession_FromWrongOffset_ThrowsBadRequest() {
+        activeSession(MB, 2L * MB);
+
+        assertThrows(BadRequestException.class, () -> uploadSessionService.uploadToSession(USER_ID, SESSION_ID, 0,
+                new ByteArrayInputStream(new byte[10])));
+        assertTrue(transport.requests.isEmpty());
+    }
+
+    @Test
+    void getSession_ReadsCommittedOffsetFromDrive() throws IOException {
+        // Arrange
+        UploadSession session = activeSession(0, 2L * MB);
+        transport.respond(new MockLowLevelHttpResponse().setStatusCode(308).addHeader("Range", "bytes=0-" + (MB - 1)));
+
+        // Act
+        UploadSessionDTO result = uploadSessionService.getSession(USER_ID, SESSION_ID);
+
+        // Assert
+        assertEquals(MB, result.getCommittedOffset());
+        assertEquals(SESSION_URI, transport.requests.get(0).getUrl());
+        verify(uploadSessionRepository).save(session);
+    }
+
+    @Test
+    void getSession_WhenDriveDroppedTheSession_MarksItExpired() throws IOException {
+        activeSession(0, 2L * MB);
+        transport.respond(new MockLowLevelHttpResponse().setStatusCode(404));
+
+        UploadSessionDTO result = uploadSessionService.getSession(USER_ID, SESSION_ID);
+
+        assertEquals(UploadSession.Status.EXPIRED, result.getStatus());
+    }
+
+    @Test
+    void getSession_OfAnotherUser_ThrowsRecordNotFound() {
+        when(uploadSessionRepository.findBySessionIdAndUser_OauthId(SESSION_ID, USER_ID)).thenReturn(Optional.empty());
+
+        assertThrows(RecordNotFoundException.class, () -> uploadSessionService.getSession(USER_ID, SESSION_ID));
+    }
+
+    private UploadSession activeSession(long committedOffset, long totalSize) {
+        UploadSession session = new UploadSession();
+        session.setUser(testUser);
+        session.setSessionId(SESSION_ID);
+        session.setDriveSessionUri(SESSION_URI);
+        session.setFileName("big.bin");
+        session.setMimeType("application/octet-stream");
+        session.setTotalSize(totalSize);
+        session.setCommittedOffset(committedOffset);
+        session.setStatus(UploadSession.Status.ACTIVE);
+        when(uploadSessionRepository.findBySessionIdAndUser_OauthId(SESSION_ID, USER_ID)).thenReturn(Optional.of(session));
+        return session;
+    }
+
+    // Answers each request with the next scripted response and keeps the requests for inspection
+    private static class ScriptedTransport extends MockHttpTransport {
+
+        private final Deque<MockLowLevelHttpResponse> responses = new LinkedList<>();
+
+        private final List<MockLowLevelHttpRequest> requests = new ArrayList<>();
+
+        void respond(MockLowLevelHttpResponse response) {
+            responses.add(response);
+        }
+
+        @Override
+        public LowLevelHttpRequest buildRequest(String method, String url) {
+            MockLowLevelHttpRequest request = new MockLowLevelHttpRequest(url) {
+                @Override
+                public LowLevelHttpResponse execute() throws IOException {
+                    return responses.pop();
+                }
+            };
+            requests.add(request);
+            return request;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.strac.files.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+public class ChecksumInputStreamTest {
+
+    @Test
+    void getMd5Checksum_AfterReadingEverything_ReturnsHexMd5AndSize() throws IOException {
+        // Arrange
+        ChecksumInputStream stream = new ChecksumInputStream(
+                new ByteArrayInputStream("test content".getBytes(StandardCharsets.UTF_8)));
+
+        // Act
+        byte[] read = stream.readAllBytes();
+
+        // Assert
+        assertEquals("test content", new String(read, StandardCharsets.UTF_8));
+        assertEquals("9473fdd0d880a43c21b7778d34872157", stream.getMd5Checksum());
+        assertEquals(12, stream.getSize());
+    }
+
+    @Test
+    void getMd5Checksum_CountsSkippedAndSingleByteReads() throws IOException {
+        // Arrange
+        ChecksumInputStream stream = new ChecksumInputStream(
+                new ByteArrayInputStream("test content".getBytes(StandardCharsets.UTF_8)));
+
+        // Act
+        stream.read();
+        stream.skip(4);
+        stream.readAllBytes();
+
+        // Assert
+        assertEquals("9473fdd0d880a43c21b7778d34872157", stream.getMd5Checksum());
+        assertEquals(12, stream.getSize());
+    }
+
+    @Test
+    void getMd5Checksum_OfEmptyStream_ReturnsMd5OfNoBytes() throws IOException {
+        try (InputStream stream = new ChecksumInputStream(new ByteArrayInputStream(new byte[0]))) {
+            assertEquals(-1, stream.read());
+            assertEquals("d41d8cd98f00b204e9800998ecf8427e", ((ChecksumInputStream) stream).getMd5Checksum());
+        }
+    }
+}
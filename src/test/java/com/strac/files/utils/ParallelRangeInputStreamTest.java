@@ -0,0 +1,95 @@
+package com.strac.files.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+public class ParallelRangeInputStreamTest {
+
+    private final SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor();
+
+    private final byte[] data = new byte[1_000_000];
+
+    private final List<String> fetchedRanges = new CopyOnWriteArrayList<>();
+
+    {
+        new Random(42).nextBytes(data);
+    }
+
+    @Test
+    void read_ReassemblesThePartsInOrder() throws IOException {
+        // Act
+        byte[] read;
+        try (InputStream stream = new ParallelRangeInputStream(this::fetch, 1000, 899_999, 64 * 1024, 4, executor)) {
+            read = stream.readAllBytes();
+        }
+
+        // Assert
+        assertArrayEquals(Arrays.copyOfRange(data, 1000, 900_000), read);
+        assertEquals(14, fetchedRanges.size());
+        assertTrue(fetchedRanges.contains("1000-66535"));
+        assertTrue(fetchedRanges.contains("852968-899999"));
+    }
+
+    @Test
+    void read_WhenExecutorIsFull_FetchesPartsItself() throws IOException {
+        // Act
+        byte[] read;
+        try (InputStream stream = new ParallelRangeInputStream(this::fetch, 0, 299_999, 100_000, 2, task -> {
+            throw new RejectedExecutionException("full");
+        })) {
+            read = stream.readAllBytes();
+        }
+
+        // Assert
+        assertArrayEquals(Arrays.copyOfRange(data, 0, 300_000), read);
+    }
+
+    @Test
+    void read_WhenAPartEndsEarly_Throws() {
+        ParallelRangeInputStream.RangeFetcher shortFetcher = (from, to) ->
+                new ByteArrayInputStream(data, (int) from, (int) (to - from));
+
+        IOException exception = assertThrows(IOException.class, () -> {
+            try (InputStream stream = new ParallelRangeInputStream(shortFetcher, 0, 199_999, 100_000, 2, executor)) {
+                stream.readAllBytes();
+            }
+        });
+        assertEquals("Range fetch ended 1 bytes early", exception.getMessage());
+    }
+
+    @Test
+    void read_WhenAFetchFails_ThrowsItsException() {
+        ParallelRangeInputStream.RangeFetcher failingFetcher = (from, to) -> {
+            if (from > 0) {
+                throw new IOException("Drive unavailable");
+            }
+            return fetch(from, to);
+        };
+
+        IOException exception = assertThrows(IOException.class, () -> {
+            try (InputStream stream = new ParallelRangeInputStream(failingFetcher, 0, 199_999, 100_000, 2, executor)) {
+                stream.readAllBytes();
+            }
+        });
+        assertEquals("Drive unavailable", exception.getMessage());
+    }
+
+    private InputStream fetch(long from, long to) {
+        fetchedRanges.add(from + "-" + to);
+        return new ByteArrayInputStream(data, (int) from, (int) (to - from + 1));
+    }
+}
@@ -0,0 +1,95 @@
+package com.strac.files.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+public class ReadAheadInputStreamTest {
+
+    private final SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor();
+
+    @Test
+    void read_ReturnsEverySourceByteInOrder() throws IOException {
+        // Arrange
+        byte[] data = new byte[100_000];
+        new Random(42).nextBytes(data);
+
+        // Act
+        byte[] read;
+        try (InputStream stream = new ReadAheadInputStream(new ByteArrayInputStream(data), 1024, 4, executor)) {
+            read = stream.readAllBytes();
+        }
+
+        // Assert
+        assertArrayEquals(data, read);
+    }
+
+    @Test
+    void read_WithEmptySource_ReturnsEndOfStream() throws IOException {
+        try (InputStream stream = new ReadAheadInputStream(new ByteArrayInputStream(new byte[0]), 1024, 4, executor)) {
+            assertEquals(-1, stream.read());
+        }
+    }
+
+    @Test
+    void read_WhenSourceFails_ThrowsSourceException() {
+        // Arrange
+        InputStream failingSource = new SequenceInputStream(new ByteArrayInputStream(new byte[10]), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Client disconnected");
+            }
+        });
+
+        // Act & Assert
+        IOException exception = assertThrows(IOException.class, () -> {
+            try (InputStream stream = new ReadAheadInputStream(failingSource, 4, 2, executor)) {
+                stream.readAllBytes();
+            }
+        });
+        assertEquals("Client disconnected", exception.getMessage());
+    }
+
+    @Test
+    void close_BeforeEndOfStream_StopsReadingTheSource() throws IOException {
+        // Arrange
+        AtomicInteger bytesRead = new AtomicInteger();
+        InputStream endlessSource = new InputStream() {
+            @Override
+            public int read() {
+                bytesRead.incrementAndGet();
+                return 0;
+            }
+        };
+        InputStream stream = new ReadAheadInputStream(endlessSource, 16, 2, executor);
+        stream.read();
+
+        // Act
+        stream.close();
+        int readAfterClose = bytesRead.get();
+
+        // Assert
+        assertTrue(readAfterClose <= 16 * 5);
+        assertEquals(readAfterClose, bytesRead.get());
+    }
+
+    @Test
+    void constructor_WhenExecutorIsFull_ThrowsRejectedExecutionException() {
+        assertThrows(RejectedExecutionException.class, () -> new ReadAheadInputStream(
+                new ByteArrayInputStream(new byte[1]), 1024, 4, task -> {
+                    throw new RejectedExecutionException("full");
+                }));
+    }
+}
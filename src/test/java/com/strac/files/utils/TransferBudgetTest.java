@@ -0,0 +1,106 @@
+package com.strac.files.utils;
+
+import com.strac.files.exceptions.TooManyRequestsException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Charles on 18/10/2026
+ */
+public class TransferBudgetTest {
+
+    private static final int MB = 1024 * 1024;
+
+    private SimpleMeterRegistry meterRegistry;
+    private TransferBudget budget;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        budget = new TransferBudget(4, 0, 7, meterRegistry);
+    }
+
+    @Test
+    void acquire_PublishesBytesInFlightUntilClosed() throws IOException {
+        TransferBudget.Permit permit = budget.acquire(3 * MB, TransferBudget.Direction.UPLOAD);
+
+        assertEquals(3.0 * MB, meterRegistry.get("files.transfer.budget.used").gauge().value());
+        assertEquals(1.0, meterRegistry.get("files.transfer.budget.active").gauge().value());
+
+        permit.close();
+        permit.close();
+
+        assertEquals(0.0, meterRegistry.get("files.transfer.budget.used").gauge().value());
+        assertEquals(0.0, meterRegistry.get("files.transfer.budget.active").gauge().value());
+    }
+
+    @Test
+    void acquire_PastTheBudget_ThrowsTooManyRequestsAndCountsRejection() throws IOException {
+        // Arrange
+        budget.acquire(3 * MB, TransferBudget.Direction.UPLOAD);
+
+        // Act
+        TooManyRequestsException exception = assertThrows(TooManyRequestsException.class,
+                () -> budget.acquire(2 * MB, TransferBudget.Direction.DOWNLOAD));
+
+        // Assert
+        assertEquals(7, exception.getRetryAfterSeconds());
+        assertEquals(1.0, meterRegistry.get("files.transfer.budget.rejected").tag("direction", "download")
+                .counter().count());
+        assertEquals(3.0 * MB, budget.usedBytes());
+    }
+
+    @Test
+    void acquire_BiggerThanTheWholeBudget_RunsOnItsOwn() throws IOException {
+        try (TransferBudget.Permit permit = budget.acquire(100L * MB, TransferBudget.Direction.UPLOAD)) {
+            assertEquals(4.0 * MB, budget.usedBytes());
+            assertThrows(TooManyRequestsException.class, () -> budget.acquire(1, TransferBudget.Direction.UPLOAD));
+        }
+        assertEquals(0.0, budget.usedBytes());
+    }
+
+    @Test
+    void transfer_KeepsTheBytesUntilTheNewPermitIsClosed() throws IOException {
+        // Arrange
+        TransferBudget.Permit permit = budget.acquire(3 * MB, TransferBudget.Direction.UPLOAD);
+
+        // Act
+        TransferBudget.Permit transferred = permit.transfer();
+        permit.close();
+
+        // Assert
+        assertEquals(3.0 * MB, budget.usedBytes());
+        assertEquals(1.0, meterRegistry.get("files.transfer.budget.active").gauge().value());
+        assertThrows(IllegalStateException.class, permit::transfer);
+        transferred.close();
+        assertEquals(0.0, budget.usedBytes());
+    }
+
+    @Test
+    void acquire_WaitsForRoomUpToQueueTimeout() throws Exception {
+        // Arrange
+        TransferBudget queueingBudget = new TransferBudget(4, 5000, 7, new SimpleMeterRegistry());
+        TransferBudget.Permit first = queueingBudget.acquire(4 * MB, TransferBudget.Direction.UPLOAD);
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            first.close();
+        });
+
+        // Act
+        releaser.start();
+        TransferBudget.Permit second = queueingBudget.acquire(MB, TransferBudget.Direction.UPLOAD);
+
+        // Assert
+        assertEquals(1.0 * MB, queueingBudget.usedBytes());
+        second.close();
+        releaser.join();
+    }
+}